@@ -7,16 +7,23 @@ import com.hypixel.hytale.server.core.universe.world.World;
 import com.karolex.hydrodynamics.util.BlockUtil;
 import com.karolex.hydrodynamics.blocknetwork.BlockNetworkSerialization.*;
 import com.hypixel.hytale.codec.KeyedCodec;
+import com.hypixel.hytale.math.util.ChunkUtil;
 import com.hypixel.hytale.codec.builder.BuilderCodec;
 import com.hypixel.hytale.codec.codecs.array.ArrayCodec;
 import com.hypixel.hytale.math.vector.Vector3i;
 import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
 import com.hypixel.hytale.server.core.universe.world.chunk.WorldChunk;
-import com.karolex.hydrodynamics.util.UniqueSchedule;
+import com.karolex.hydrodynamics.util.LongHashSet;
+import com.karolex.hydrodynamics.util.LongObjectMap;
+import com.karolex.hydrodynamics.util.PortLayout;
+import com.karolex.hydrodynamics.util.Schedule;
+import com.karolex.hydrodynamics.util.ScheduleEntry;
+import com.karolex.hydrodynamics.util.ScheduleType;
 
-import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -24,134 +31,399 @@ import java.util.function.Supplier;
  *
  * @param <C>
  */
-public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
+public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> extends ScheduleEntry {
 
     public static final String DEFAULT_CONNECTION_TYPE = "Default";
 
-    private final Map<Vector3i, Node> nodeMap = new HashMap<>();
+    /** Slot width of the update schedule: one server tick at 30 TPS. */
+    public static final long SCHEDULE_RESOLUTION_NANOS = 1_000_000_000L / 30;
+
+    /** Schedule backend of new networks, selectable via {@code -Dhydrodynamics.schedule=INDEXED_HEAP} for benchmarks. */
+    public static final ScheduleType SCHEDULE_TYPE = scheduleTypeFromProperty();
+
+    // Node by packed block position, see BlockUtil#pack.
+    private final LongObjectMap<Node> nodeMap = new LongObjectMap<>();
     private final Set<Node> nodes = new HashSet<>();
     private final Supplier<BlockNetwork<C>> factory;
 
-    protected BlockNetwork(World world, Supplier<BlockNetwork<C>> factory) {
-        this.world = world;
+    // Owning network by packed block position, shared by all networks of a manager.
+    private NetworkIndex<C> owners;
+
+    protected BlockNetwork(Supplier<BlockNetwork<C>> factory) {
         this.factory = factory;
     }
 
-    private final UniqueSchedule<Node> schedule = new UniqueSchedule<>();
-    private final HashSet<Node> visitedNodes = new HashSet<>();
+    // Stamps of ticks and split detections. Unique across all networks, so that nodes keep valid stamps
+    // when they move to another network, and no stamp has to be cleared. A long does not wrap around
+    // back to 0, which stands for never.
+    private static final AtomicLong EPOCHS = new AtomicLong();
 
-    private final World world;
+    private final Schedule<Node> schedule = SCHEDULE_TYPE.create(SCHEDULE_RESOLUTION_NANOS);
+    // Nodes updated by the last tick; those still stamped with lastEpoch, see visitedLastTick().
+    private ArrayList<Node> visitedNodes = new ArrayList<>();
 
-    void tick() {
-        Instant now = world.getEntityStore()
-                .getStore()
-                .getResource(TimeResource.getResourceType()).getNow();
-        Set<Node> newVisitedNodes = new HashSet<>();
-        Set<Node> nextWave = new HashSet<>();
-        Set<Edge> updatedEdges = new HashSet<>();
+    // Scratch lists of tick(), kept to avoid reallocating them every tick. Duplicates are kept out by the stamps.
+    private ArrayList<Node> newVisitedNodes = new ArrayList<>();
+    private final ArrayList<Node> nextWave = new ArrayList<>();
 
-        while (!schedule.isEmpty() && !schedule.peekEarliestTimestamp().isAfter(now)) {
-            Node node = schedule.pollEarliest();
-            newVisitedNodes.add(node);
+    // Stamp of the running tick, and of the last one that finished.
+    private long epoch;
+    private long lastEpoch = EPOCHS.incrementAndGet();
 
-            // Update Edges first!
-            for (Edge edge : node.connectedEdges) {
-                if (updatedEdges.add(edge)) edge.update();
+    // World of the owning manager, null until the manager is bound to it.
+    private World world;
+
+    // Nodes whose world update hooks are due, collected while ticking off the world thread.
+    private final List<Node> deferredWorldUpdates = new ArrayList<>();
+
+    // Index-based form the tick runs on, null after topology changes until the next tick.
+    private CompiledNetwork<C> compiled;
+    private BlockNetworkState<C> state;
+
+    // Latest published state, see publishSnapshot().
+    private volatile BlockNetworkSnapshot snapshot = BlockNetworkSnapshot.EMPTY;
+    private long snapshotVersion;
+
+    // Deferred split checks and update waves while a batch is applied, null otherwise. Nodes are kept by one
+    // of their blocks, since merges and splits later in the batch may replace the node objects.
+    private LongHashSet batchSplitSeeds;
+    private LongHashSet batchWaves;
+
+    /**
+     * @param deferWorldUpdates collect world update hooks for {@link #runDeferredWorldUpdates()}
+     *                          instead of running them, for ticks off the world thread
+     */
+    void tick(long now, boolean deferWorldUpdates) {
+        epoch = EPOCHS.incrementAndGet();
+        CompiledNetwork<C> net = compiled();
+        BlockNetworkState<C> state = net.state;
+        int[] edgeFrom = net.edgeFrom;
+        int[] edgeTo = net.edgeTo;
+        int[] offsets = net.nodeEdgeOffsets;
+        int[] nodeEdges = net.nodeEdges;
+        if (state.stepsGlobally()) {
+            step(net, now, deferWorldUpdates);
+            return;
+        }
+
+        Node node;
+        while ((node = schedule.poll(now)) != null) {
+            int i = node.index;
+
+            // Regions the state can solve in closed form skip the relaxation and go to sleep
+            int settled = state.settle(i, net.settled);
+            if (settled > 0) {
+                for (int k = 0; k < settled; k++) {
+                    Node member = net.nodes.get(net.settled[k]);
+                    net.nodeVersion[member.index]++;
+                    schedule.cancel(member);
+                    member.waveEpoch = 0;  // drops it from nextWave
+                    markVisited(member);
+                    member.lastUpdated = now;
+                    if (member.storage.requiresWorldUpdate()) {
+                        if (deferWorldUpdates) deferredWorldUpdates.add(member);
+                        else runWorldUpdate(member);
+                    }
+                }
+                continue;
+            }
+
+            markVisited(node);
+
+            // Update Edges first! Edges whose ends did not change since they were computed keep their flux.
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                int e = nodeEdges[k];
+                int from = edgeFrom[e];
+                int to = edgeTo[e];
+                if (net.edgeUpdatedAt[e] == epoch || from < 0 || to < 0) continue;
+                net.edgeUpdatedAt[e] = epoch;
+                if (net.edgeFromVersion[e] == net.nodeVersion[from] && net.edgeToVersion[e] == net.nodeVersion[to]) continue;
+                state.computeFlux(e, from, to);
+                net.edgeFromVersion[e] = net.nodeVersion[from];
+                net.edgeToVersion[e] = net.nodeVersion[to];
+                net.edgeComputedAt[e] = epoch;
+            }
+
+            float dt = (now - node.lastUpdated) * 1e-9f;
+            node.lastUpdated = now;
+            state.beginUpdate(i);
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                int e = nodeEdges[k];
+                state.applyFlux(i, e, edgeFrom[e] == i);
+            }
 
-                // If that causes bugs, move this section into a separate for-loop
-                Node otherNode = edge.other(node);
-                if (otherNode == null) continue;
-                if (visitedNodes.contains(otherNode)) continue;
+            // Do whatever it gotta do...
+            state.tick(i, dt);
+            long delay = state.computeDelay(i, dt);
+            boolean changed = state.changed(i);
+            if (changed) net.nodeVersion[i]++;
+
+            // Neighbours follow if this node changed, or to apply the fluxes computed for them this tick
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                int e = nodeEdges[k];
+                if (!changed && net.edgeComputedAt[e] != epoch) continue;
+                int from = edgeFrom[e];
+                int to = edgeTo[e];
+                int other = from == i ? to : to == i ? from : -1;
+                if (other < 0) continue;
+                Node otherNode = net.nodes.get(other);
+                if (visitedLastTick(otherNode) || otherNode.waveEpoch == epoch) continue;
+                otherNode.waveEpoch = epoch;
                 nextWave.add(otherNode);
             }
 
-            Duration delay = node.update(now, world);
-            if (delay != null) schedule.insert(node, now.plus(delay));
+            // World update hook
+            if (node.storage.requiresWorldUpdate()) {
+                // Off the world thread, even the component is only written once the world thread runs the hook.
+                if (deferWorldUpdates) deferredWorldUpdates.add(node);
+                else runWorldUpdate(node);
+            }
+
+            if (delay != BlockNetworkComponent.SLEEP) schedule.insert(node, now + delay);
+        }
+
+        for (Node next : nextWave) {
+            if (next.waveEpoch == epoch) wake(next, now);
         }
+        nextWave.clear();
+        finishTick();
+    }
 
-        for (Node node : nextWave) schedule.insert(node, Instant.EPOCH);
+    private void markVisited(Node node) {
+        if (node.visitedEpoch == epoch) return;
+        node.previousVisitedEpoch = node.visitedEpoch;
+        node.visitedEpoch = epoch;
+        newVisitedNodes.add(node);
+    }
 
-        visitedNodes.clear();
-        visitedNodes.addAll(newVisitedNodes);
+    // While ticking, a node updated by both the last and the running tick keeps the last one in previousVisitedEpoch.
+    private boolean visitedLastTick(Node node) {
+        return node.visitedEpoch == lastEpoch || node.previousVisitedEpoch == lastEpoch;
     }
 
+    private void finishTick() {
+        lastEpoch = epoch;
+        ArrayList<Node> previousVisited = visitedNodes;
+        visitedNodes = newVisitedNodes;
+        newVisitedNodes = previousVisited;
+        newVisitedNodes.clear();
+    }
+
+    /**
+     * Tick for states that step the whole network at once. Any due node wakes the network; a single
+     * node is rescheduled to stand for all of them.
+     */
+    private void step(CompiledNetwork<C> net, long now, boolean deferWorldUpdates) {
+        Node due = schedule.poll(now);
+        if (due == null) return;
+        while (schedule.poll(now) != null) {}
+
+        long elapsed = 0;
+        for (Node node : net.nodes) elapsed = Math.max(elapsed, now - node.lastUpdated);
+        long delay = net.state.step(elapsed * 1e-9f);
+
+        for (Node node : net.nodes) {
+            node.lastUpdated = now;
+            markVisited(node);
+            if (node.storage.requiresWorldUpdate()) {
+                if (deferWorldUpdates) deferredWorldUpdates.add(node);
+                else runWorldUpdate(node);
+            }
+        }
+        if (delay != BlockNetworkComponent.SLEEP) schedule.insert(due, now + delay);
+        finishTick();
+    }
+
+    /**
+     * Returns the compiled form of this network, rebuilding it after topology changes.
+     */
+    private CompiledNetwork<C> compiled() {
+        if (compiled == null) {
+            if (state == null) state = createState();
+            compiled = new CompiledNetwork<>(nodes, this::nodeAt, state);
+        }
+        return compiled;
+    }
+
+    /**
+     * Builds the compiled form ahead of a tick off the world thread. Compiling numbers the Node and
+     * Edge objects, whose indices the world thread reads, so it has to run on the world thread.
+     */
+    void compile() {
+        compiled();
+    }
+
+    /**
+     * Writes the compiled state back into the components and drops it. Must be called
+     * before the Node and Edge objects are modified.
+     */
+    private void invalidateCompiled() {
+        if (compiled == null) return;
+        compiled.store();
+        compiled = null;
+    }
+
+    /**
+     * Writes the compiled state back into the components, so they can be read from the outside.
+     */
+    private void syncStorage() {
+        if (compiled != null) compiled.store();
+    }
+
+    /**
+     * Layout of the component state during ticks. Override with a dense primitive layout
+     * for hot component types.
+     */
+    protected BlockNetworkState<C> createState() {
+        return new ObjectNetworkState<>();
+    }
+
+    /**
+     * Schedules {@code node} right away. Its component may have been changed from the outside,
+     * so it is reloaded into the compiled state.
+     */
     void triggerUpdateWave(Node node) {
         if (node == null) return;
-        visitedNodes.remove(node);
-        schedule.insert(node, Instant.EPOCH);
+        if (batchWaves != null) {
+            batchWaves.add(node.blocks.first());
+            return;
+        }
+        if (compiled != null && compiled.contains(node)) {
+            compiled.state.load(node.index, node.storage);
+            compiled.nodeVersion[node.index]++;
+        }
+        node.visitedEpoch = 0;  // no longer counts as visited by the last tick
+        wake(node, now());
+    }
+
+    /**
+     * Schedules {@code node} right away. A sleeping node did not change while it slept, so its
+     * next update only covers the time since it was woken, not the whole sleep.
+     */
+    private void wake(Node node, long now) {
+        if (!node.isScheduled()) node.lastUpdated = now;
+        schedule.insert(node, Schedule.IMMEDIATELY);
     }
 
     public void triggerUpdateWave(Vector3i pos) {
-        triggerUpdateWave(nodeMap.get(pos));
+        triggerUpdateWave(nodeAt(pos));
     }
 
-    final class Node {
-        C storage;
-        final Set<Vector3i> blocks = new LinkedHashSet<>();
-        final Set<Edge> connectedEdges = new HashSet<>();
-        Instant lastUpdated;
+    private static ScheduleType scheduleTypeFromProperty() {
+        String name = System.getProperty("hydrodynamics.schedule", ScheduleType.TIMING_WHEEL.name());
+        try {
+            return ScheduleType.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ScheduleType.TIMING_WHEEL;
+        }
+    }
 
-        Node(Instant timeOfCreation) { lastUpdated = timeOfCreation; }
+    void runDeferredWorldUpdates() {
+        for (Node node : deferredWorldUpdates) runWorldUpdate(node);
+        deferredWorldUpdates.clear();
+    }
 
-        Duration update(Instant now, World world) {
-            float dt = Duration.between(lastUpdated, now).toNanos() * 1e-9f;
-            lastUpdated = now;
-            C previous = storage.copy(); // Snapshot vorher
+    private void runWorldUpdate(Node node) {
+        state.store(node.index, node.storage);
+        C storage = node.storage;
+        node.blocks.forEach(b -> storage.onWorldUpdate(BlockUtil.unpack(b), world));
+    }
 
-            for (Edge edge : connectedEdges) {
-                if (nodeMap.get(edge.from) == this) {
-                    storage.del(edge.flux);
-                } else {
-                    storage.add(edge.flux);
-                }
-                // edge.flux = edge.flux.zero();
-            }
+    /**
+     * Writes the state of the nodes updated by the last tick back into their components. With a
+     * simulation thread, the components are only written here, on the world thread between two
+     * ticks, so they hold a consistent snapshot for readers while the next tick runs.
+     */
+    void publish() {
+        if (compiled == null) return;
+        for (Node node : visitedNodes) {
+            if (node.visitedEpoch == lastEpoch && compiled.contains(node)) state.store(node.index, node.storage);
+        }
+    }
 
-            // Do whatever it gotta do...
-            storage.tick(dt);
+    /**
+     * Publishes the current state of this network as a new {@link #snapshot()}.
+     * Must not run concurrently with a tick or topology change.
+     */
+    void publishSnapshot() {
+        CompiledNetwork<C> net = compiled();
+        int channels = net.state.snapshotChannels();
+        if (channels == 0) return;
+        if (net.positions == null) net.positions = BlockNetworkSnapshot.indexPositions(net.nodes);
+        double[][] values = new double[channels][net.nodes.size()];
+        net.state.snapshot(values, net.nodes.size());
+        snapshot = new BlockNetworkSnapshot(++snapshotVersion, net.positions, values);
+    }
 
-            // World update hook
-            if (storage.requiresWorldUpdate()) {
-                for (Vector3i pos : blocks) {
-                    final Vector3i capturedPos = new Vector3i(pos);
-                    final C capturedStorage = storage;
-                    capturedStorage.onWorldUpdate(capturedPos, world);
-                }
-            }
+    /**
+     * Latest published state of this network, safe to read from any thread.
+     */
+    public BlockNetworkSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Deadline of the earliest pending node update, {@link Long#MAX_VALUE} if there is none.
+     * May be a lower bound, depending on the schedule backend.
+     */
+    long nextDeadline() {
+        return schedule.peekDeadline();
+    }
+
+    // Nodes created before the network is bound to a world, e.g. on load, start counting in attachWorld().
+    private long now() {
+        if (world == null) return 0;
+        return toNanos(world.getEntityStore()
+                .getStore()
+                .getResource(TimeResource.getResourceType()).getNow());
+    }
 
-            return storage.computeDelay(dt, previous, storage.isActive());
+    /**
+     * Nanoseconds since the epoch, saturating outside of the {@code long} range.
+     */
+    static long toNanos(Instant instant) {
+        try {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+        } catch (ArithmeticException e) {
+            return instant.getEpochSecond() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
         }
     }
 
+    final class Node extends ScheduleEntry {
+        C storage;
+        final LongHashSet blocks = new LongHashSet();  // packed positions
+        final Set<Edge> connectedEdges = new HashSet<>();
+        long lastUpdated;
+        int index = -1;  // in the compiled network
+
+        // Stamps from EPOCHS
+        long visitedEpoch;          // last tick that updated the node
+        long previousVisitedEpoch;  // the one before, see visitedLastTick()
+        long waveEpoch;             // tick that queued it for the next wave
+        long splitEpoch;            // split detection that labelled it
+        int splitLabel;
+
+        Node(long timeOfCreation) { lastUpdated = timeOfCreation; }
+    }
+
     final class Edge {
         final Vector3i from;
         final String fromType;
 
         final Vector3i to;
         final String toType;
+        final int fromTypeId;  // see ConnectionTypes
+        final int toTypeId;
         C flux;
+        int index = -1;  // in the compiled network
 
         Edge(Vector3i from, Vector3i to, String fromType, String toType) {
             this.from = new Vector3i(from);
             this.fromType = fromType;
             this.to   = new Vector3i(to);
             this.toType = toType;
-        }
-
-        Edge update() {
-            Node fromNode = nodeMap.get(from);
-            Node toNode   = nodeMap.get(to);
-            if (fromNode != null && toNode != null)
-                flux = flux.calculateFlux(fromNode.storage, toNode.storage, fromType, toType);
-            return this;
-        }
-
-        public Node other(Node node) {
-            Node fromNode = nodeMap.get(from);
-            Node toNode   = nodeMap.get(to);
-            if (node == fromNode) return toNode;
-            if (node == toNode)   return fromNode;
-            return null;
+            this.fromTypeId = ConnectionTypes.of(fromType);
+            this.toTypeId = ConnectionTypes.of(toType);
         }
 
         public Vector3i other(Vector3i node) {
@@ -159,56 +431,230 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
             if (node == to)   return from;
             return null;
         }
+    }
 
-        public boolean connectedTo(Node node) {
-            return (nodeMap.get(this.to) == node) || (nodeMap.get(this.from) == node);
-        }
+    private void indexBlock(long pos, Node node) {
+        nodeMap.put(pos, node);
+        if (owners != null) owners.put(pos, this);
+    }
+
+    private void unindexBlock(long pos) {
+        nodeMap.remove(pos);
+        if (owners != null && owners.get(pos) == this) owners.remove(pos);
+    }
+
+    /**
+     * Registers all blocks of this network in the manager's position index and keeps
+     * it up to date through all further topology changes, including splits.
+     */
+    void attachIndex(NetworkIndex<C> owners) {
+        this.owners = owners;
+        for (Node node : nodes) node.blocks.forEach(b -> owners.put(b, this));
+    }
+
+    /**
+     * Binds this network to the world of its manager, whose time and chunks it uses from then on.
+     */
+    void attachWorld(World world) {
+        if (this.world == world) return;
+        boolean unbound = this.world == null;
+        this.world = world;
+        if (!unbound || world == null) return;
+        long now = now();
+        for (Node node : nodes) node.lastUpdated = now;
+    }
+
+    private Node nodeAt(Vector3i pos) {
+        return nodeMap.get(BlockUtil.pack(pos));
+    }
+
+    /**
+     * The endpoint of {@code edge} opposite to {@code node}, resolved through this network.
+     * Edges move between networks on splits, so they must not resolve through the network
+     * that created them.
+     */
+    private Node other(Edge edge, Node node) {
+        Node fromNode = nodeAt(edge.from);
+        Node toNode   = nodeAt(edge.to);
+        if (node == fromNode) return toNode;
+        if (node == toNode)   return fromNode;
+        return null;
     }
 
     public void onBlockPlaced(Vector3i origin, BlockType blockType, WorldChunk chunk, C storage) {
-        // 1.   Check all positions occupied by the block.
-        Set<Vector3i> occupiedSet = BlockUtil.getOccupiedPositions(blockType, origin, chunk);
+        onBlockPlaced(origin, BlockUtil.getOccupiedPositions(blockType, origin, chunk), chunk, storage);
+    }
+
+    /**
+     * @param occupiedSet all positions occupied by the block, see {@link BlockUtil#getOccupiedPositions}
+     */
+    public void onBlockPlaced(Vector3i origin, Set<Vector3i> occupiedSet, WorldChunk chunk, C storage) {
+        invalidateCompiled();
+
+        // 1.   All positions occupied by the block are given by the caller.
 
         // 2.   Sanity-Check
         for (Vector3i p : occupiedSet) {
-            if (nodeMap.containsKey(p))
+            if (nodeMap.containsKey(BlockUtil.pack(p)))
                 throw new IllegalStateException("Block position already occupied: " + p);
         }
 
         // 3.   Register new Node
-        Node newNode = new Node(world.getEntityStore()
-                .getStore()
-                .getResource(TimeResource.getResourceType()).getNow());
+        Node newNode = new Node(now());
         newNode.storage = storage;
         for (Vector3i p : occupiedSet) {
-            newNode.blocks.add(new Vector3i(p));
-            nodeMap.put(new Vector3i(p), newNode);
+            long b = BlockUtil.pack(p);
+            newNode.blocks.add(b);
+            indexBlock(b, newNode);
         }
         nodes.add(newNode);
 
+        connectNewNode(origin, chunkLookup(world, origin, chunk));
+        runOnBlockAdded();
+    }
+
+    /**
+     * Adds a group of placements at once, see {@link BlockNetworkManager#onBlocksPlaced}.
+     * Placements that {@link #onBlockPlaced} would merge one after another, like linear pipe runs,
+     * are joined into a single node up front. Only the contacts between the resulting nodes and
+     * the existing ones go through the merge logic.
+     *
+     * @param occupied the positions occupied by each placement, see {@link BlockUtil#getOccupiedPositions}
+     */
+    void onBlocksPlaced(List<BlockPlacement<C>> placements, List<Set<Vector3i>> occupied) {
+        invalidateCompiled();
+        int count = placements.size();
+        Function<Vector3i, WorldChunk> chunkAt = chunkLookup(world, placements);
+
+        // 1.   Sanity-Check, indexing the placements by position.
+        LongObjectMap<Integer> placementAt = new LongObjectMap<>(count);
+        for (int i = 0; i < count; i++) {
+            for (Vector3i p : occupied.get(i)) {
+                long b = BlockUtil.pack(p);
+                if (nodeMap.containsKey(b) || placementAt.put(b, i) != null)
+                    throw new IllegalStateException("Block position already occupied: " + p);
+            }
+        }
+
+        // 2.   Pipes with more than two connections are junctions and stay separate nodes.
+        boolean[] linear = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            int external = 0;
+            for (Vector3i p : occupied.get(i)) {
+                for (Vector3i c : BlockUtil.getConnections(chunkAt.apply(p), p)) {
+                    if (!occupied.get(i).contains(c)) external++;
+                }
+            }
+            linear[i] = external <= 2;
+        }
+
+        // 3.   Group placements that would be merged into each other.
+        int[] parent = new int[count];
+        for (int i = 0; i < count; i++) parent[i] = i;
+        for (int i = 0; i < count; i++) {
+            C storage = placements.get(i).storage();
+            for (Vector3i p : occupied.get(i)) {
+                for (Vector3i c : BlockUtil.getConnections(chunkAt.apply(p), p)) {
+                    Integer j = placementAt.get(BlockUtil.pack(c));
+                    if (j == null || j == i) continue;
+                    C other = placements.get(j).storage();
+                    if (!storage.shouldMerge(other)) continue;
+                    if (storage.isPipe() && other.isPipe() && !(linear[i] && linear[j])) continue;
+                    int a = find(parent, i), b = find(parent, j);
+                    if (a != b) parent[b] = a;
+                }
+            }
+        }
+
+        // 4.   Register one node per group.
+        @SuppressWarnings("unchecked")
+        Node[] groupNodes = new BlockNetwork.Node[count];
+        List<Vector3i> anchors = new ArrayList<>();
+        long time = now();
+        for (int i = 0; i < count; i++) {
+            int root = find(parent, i);
+            Node node = groupNodes[root];
+            C storage = placements.get(i).storage();
+            if (node == null) {
+                node = groupNodes[root] = new Node(time);
+                node.storage = storage;
+                nodes.add(node);
+                anchors.add(placements.get(i).origin());
+            } else {
+                node.storage = node.storage.mergeComponents(storage);
+            }
+            for (Vector3i p : occupied.get(i)) {
+                long b = BlockUtil.pack(p);
+                node.blocks.add(b);
+                indexBlock(b, node);
+            }
+        }
+
+        // 5.   Connect the groups to each other and to the existing nodes.
+        for (int i = 0; i < anchors.size(); i++) connectNewNode(anchors.get(i), chunkAt);
+        for (int i = 0; i < count; i++) runOnBlockAdded();
+    }
+
+    /**
+     * Looks up the chunk of a block position, as placed nodes and their neighbours may span chunk
+     * borders. The chunks of the placements are used where they apply, others are read from the
+     * world. Unbound networks fall back to the chunk of the first placement.
+     */
+    static Function<Vector3i, WorldChunk> chunkLookup(World world, List<? extends BlockPlacement<?>> placements) {
+        LongObjectMap<WorldChunk> chunks = new LongObjectMap<>();
+        for (BlockPlacement<?> p : placements) {
+            chunks.put(ChunkUtil.indexChunkFromBlock(p.origin().x, p.origin().z), p.chunk());
+        }
+        return chunkLookup(world, chunks, placements.getFirst().chunk());
+    }
+
+    static Function<Vector3i, WorldChunk> chunkLookup(World world, Vector3i origin, WorldChunk chunk) {
+        LongObjectMap<WorldChunk> chunks = new LongObjectMap<>();
+        chunks.put(ChunkUtil.indexChunkFromBlock(origin.x, origin.z), chunk);
+        return chunkLookup(world, chunks, chunk);
+    }
+
+    private static Function<Vector3i, WorldChunk> chunkLookup(World world, LongObjectMap<WorldChunk> chunks, WorldChunk fallback) {
+        return pos -> {
+            long index = ChunkUtil.indexChunkFromBlock(pos.x, pos.z);
+            WorldChunk chunk = chunks.get(index);
+            if (chunk == null && world != null) {
+                chunk = world.getChunk(index);
+                if (chunk != null) chunks.put(index, chunk);
+            }
+            return chunk != null ? chunk : fallback;
+        };
+    }
+
+    /**
+     * Connects the freshly registered node at {@code origin} to its neighbours, merging or
+     * splitting nodes as needed, and triggers the update waves.
+     */
+    private void connectNewNode(Vector3i origin, Function<Vector3i, WorldChunk> chunkAt) {
+        Node newNode = nodeAt(origin);
+
         // 4.   Collect all external neighbouring nodes.
         //      Safe the first found contact point per neighbour Node:
         //      contacts[neighbour] = { ourContactBlock, theirContactBlock }
         Map<Node, Vector3i[]> neighbourContacts = new LinkedHashMap<>();
-        for (Vector3i blockPos : occupiedSet) {
-            for (Vector3i connPos : BlockUtil.getConnections(chunk, blockPos)) {
-                if (occupiedSet.contains(connPos)) continue;
-                Node neighbour = nodeMap.get(connPos);
+        newNode.blocks.forEach(b -> {
+            Vector3i blockPos = BlockUtil.unpack(b);
+            for (Vector3i connPos : BlockUtil.getConnections(chunkAt.apply(blockPos), blockPos)) {
+                Node neighbour = nodeAt(connPos);
                 if (neighbour == null || neighbour == newNode) continue;
-                neighbourContacts.putIfAbsent(neighbour,
-                        new Vector3i[]{new Vector3i(blockPos), new Vector3i(connPos)});
+                neighbourContacts.putIfAbsent(neighbour, new Vector3i[]{blockPos, connPos});
             }
-        }
+        });
 
         // 5.   For each neighbour: decide whether merge or edge.
-        //      IMPORTANT: fetch newNode-Reference after each merge via nodeMap.get(origin).
+        //      IMPORTANT: fetch newNode-Reference after each merge via nodeAt(origin).
         for (Map.Entry<Node, Vector3i[]> entry : neighbourContacts.entrySet()) {
             Node neighbour    = entry.getKey();
             Vector3i ourPos   = entry.getValue()[0];
             Vector3i theirPos = entry.getValue()[1];
 
             // After a previous merge, origin could point towards another Node. TODO: No, idk...??
-            Node currentNew = nodeMap.get(origin);
+            Node currentNew = nodeAt(origin);
             if (currentNew == null) break; // things like these snouldn't happen...
 
             // Neighbour could have been absorbed in previous merge.
@@ -216,15 +662,15 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
 
             if (currentNew.storage.shouldMerge(neighbour.storage)) {
                 if (currentNew.storage.isPipe() && neighbour.storage.isPipe()) {
-                    int newExternal       = countExternalConnections(currentNew.blocks, chunk);
-                    int neighbourExternal = BlockUtil.getConnections(chunk, theirPos).size();
+                    int newExternal       = countExternalConnections(currentNew.blocks, chunkAt);
+                    int neighbourExternal = BlockUtil.getConnections(chunkAt.apply(theirPos), theirPos).size();
 
                     if (newExternal <= 2 && neighbourExternal <= 2) {
                         mergeInto(currentNew, neighbour);
                     } else {
-                        if (neighbourExternal > 2) splitNode(theirPos, chunk);
-                        addEdge(chunk, ourPos, theirPos, currentNew.storage);
-                        Node refreshedNeighbour = nodeMap.get(theirPos);
+                        if (neighbourExternal > 2) splitNode(theirPos);
+                        addEdge(chunkAt, ourPos, theirPos, currentNew.storage);
+                        Node refreshedNeighbour = nodeAt(theirPos);
                         if (refreshedNeighbour != null)
                             triggerUpdateWave(refreshedNeighbour);
                     }
@@ -234,33 +680,37 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
                 }
             } else {
                 // Different network component types.
-                addEdge(chunk, ourPos, theirPos, currentNew.storage);
+                addEdge(chunkAt, ourPos, theirPos, currentNew.storage);
                 triggerUpdateWave(neighbour);
             }
         }
 
         // 6.   Trigger update wave.
-        Node finalNew = nodeMap.get(origin);
+        Node finalNew = nodeAt(origin);
         if (finalNew != null) triggerUpdateWave(finalNew);
-
-        runOnBlockAdded();
     }
 
     public List<BlockNetwork<C>> onBlockRemoved(Vector3i origin, BlockType blockType, WorldChunk chunk) {
-        Node removedNode = nodeMap.get(origin);
+        Node removedNode = nodeAt(origin);
         if (removedNode == null) return Collections.emptyList();
+        invalidateCompiled();
 
         // 1.   All positions occupied by the block.
         Set<Vector3i> occupiedSet = BlockUtil.getOccupiedPositions(blockType, origin, chunk);
+        Function<Vector3i, WorldChunk> chunkAt = chunkLookup(world, origin, chunk);
 
         // 2.   Save affected neighbours before making any changes.
         Set<Node> affectedNeighbours = new LinkedHashSet<>();
+        Set<Node> splitSeeds = new LinkedHashSet<>();
+        for (Edge e : removedNode.connectedEdges) {
+            Node other = other(e, removedNode);
+            if (other != null) splitSeeds.add(other);
+        }
         for (Vector3i blockPos : occupiedSet) {
             for (Vector3i offset : BlockUtil.FACE_OFFSETS) {
-                Vector3i neighbourPos = new Vector3i(blockPos).add(offset);
-                if (occupiedSet.contains(neighbourPos)) continue;
-                Node nb = nodeMap.get(neighbourPos);
-                if (nb != null && nb != removedNode) affectedNeighbours.add(nb);
+                Node nb = nodeMap.get(BlockUtil.pack(blockPos, offset));
+                if (nb == null || occupiedSet.contains(new Vector3i(blockPos).add(offset))) continue;
+                if (nb != removedNode) affectedNeighbours.add(nb);
             }
         }
 
@@ -280,14 +730,14 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
             removeNodeCompletely(removedNode);
         } else {
             // Case C
-            splitRemovedBlockFromNode(origin, removedNode, affectedNeighbours, chunk);
+            splitRemovedBlockFromNode(origin, removedNode, affectedNeighbours);
         }
 
         // 4.   Remove invalid edges at neighbour
         //      (Edges that are pointing towards the removed Node).
         for (Node nb : affectedNeighbours) {
             nb.connectedEdges.removeIf(e -> {
-                Node other = e.other(nb);
+                Node other = other(e, nb);
                 return other == null || !nodes.contains(other);
             });
         }
@@ -297,11 +747,11 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
         Set<Node> mergeCandidates = new LinkedHashSet<>(affectedNeighbours);
         for (Node nb : affectedNeighbours) {
             for (Edge e : new ArrayList<>(nb.connectedEdges)) {
-                Node secondDegree = e.other(nb);
+                Node secondDegree = other(e, nb);
                 if (secondDegree != null) mergeCandidates.add(secondDegree);
             }
         }
-        mergeLinearNeighbours(mergeCandidates, chunk);
+        mergeLinearNeighbours(mergeCandidates, chunkAt);
 
         // 6.   Trigger update waves at affected neighbours.
         for (Node nb : affectedNeighbours) {
@@ -309,20 +759,60 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
                 triggerUpdateWave(nb);
         }
 
-        // 7.   Test for coherency of the network.
-        List<BlockNetwork<C>> splits = detectSplit();
+        // 7.   Test for coherency of the network, starting from the nodes around the removed block.
+        splitSeeds.addAll(mergeCandidates);
+        List<BlockNetwork<C>> splits;
+        if (batchSplitSeeds != null) {
+            for (Node seed : splitSeeds) if (nodes.contains(seed)) batchSplitSeeds.add(seed.blocks.first());
+            splits = Collections.emptyList();
+        } else {
+            splits = detectSplit(splitSeeds);
+        }
         runOnBlockRemoved();
         return splits;
     }
 
+    /**
+     * Defers split detection and update waves until {@link #endBatch()}, so a batch of topology
+     * changes costs one connectivity pass and one wave per touched node.
+     */
+    void beginBatch() {
+        if (batchSplitSeeds != null) return;
+        batchSplitSeeds = new LongHashSet();
+        batchWaves = new LongHashSet();
+    }
+
+    /**
+     * Triggers the waves and runs the split detection deferred since {@link #beginBatch()}.
+     *
+     * @return networks split off from this one
+     */
+    List<BlockNetwork<C>> endBatch() {
+        LongHashSet seeds = batchSplitSeeds;
+        LongHashSet waves = batchWaves;
+        if (seeds == null) return Collections.emptyList();
+        batchSplitSeeds = null;
+        batchWaves = null;
+
+        // Waves first, scheduled nodes move along into the split off networks.
+        waves.forEach(b -> triggerUpdateWave(nodeMap.get(b)));
+        List<Node> seedNodes = new ArrayList<>(seeds.size());
+        seeds.forEach(b -> {
+            Node n = nodeMap.get(b);
+            if (n != null) seedNodes.add(n);
+        });
+        return detectSplit(seedNodes);
+    }
+
     private void removeNodeCompletely(Node node) {
-        for (Vector3i b : node.blocks) nodeMap.remove(b);
         for (Edge e : node.connectedEdges) {
-            Node other = e.other(node);
+            Node other = other(e, node);
             if (other != null) other.connectedEdges.remove(e);
         }
         node.connectedEdges.clear();
+        node.blocks.forEach(this::unindexBlock);
         nodes.remove(node);
+        schedule.cancel(node);
     }
 
     /**
@@ -330,16 +820,18 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
      * blocks into separate spatial segments per BFS.
      */
     private void splitRemovedBlockFromNode(Vector3i removedPos, Node oldNode,
-                                           Set<Node> affectedNeighbours, WorldChunk chunk) {
-        nodeMap.remove(removedPos);
-        oldNode.blocks.remove(removedPos);
+                                           Set<Node> affectedNeighbours) {
+        long removed = BlockUtil.pack(removedPos);
+        unindexBlock(removed);
+        oldNode.blocks.remove(removed);
         int totalOriginalSize = oldNode.blocks.size() + 1; // +1 weil removedPos bereits entfernt
 
         nodes.remove(oldNode);
+        schedule.cancel(oldNode);
 
-        for (Vector3i b : oldNode.blocks) nodeMap.remove(b);
+        oldNode.blocks.forEach(this::unindexBlock);
 
-        Set<Vector3i> unvisited = new LinkedHashSet<>(oldNode.blocks);
+        LongHashSet unvisited = new LongHashSet(oldNode.blocks);
 
         while (!unvisited.isEmpty()) {
             Node seg = buildSegment(unvisited);
@@ -349,14 +841,14 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
             seg.storage = parts[0];
 
             for (Edge e : oldNode.connectedEdges) {
-                boolean fromInSeg = seg.blocks.contains(e.from);
-                boolean toInSeg   = seg.blocks.contains(e.to);
+                boolean fromInSeg = seg.blocks.contains(BlockUtil.pack(e.from));
+                boolean toInSeg   = seg.blocks.contains(BlockUtil.pack(e.to));
                 if (!fromInSeg && !toInSeg) continue;
 
                 seg.connectedEdges.add(e);
 
                 Vector3i externalPos = fromInSeg ? e.to : e.from;
-                Node otherNode = nodeMap.get(externalPos);
+                Node otherNode = nodeAt(externalPos);
                 if (otherNode != null) {
                     otherNode.connectedEdges.remove(e);
                     otherNode.connectedEdges.add(e);
@@ -368,7 +860,7 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
         }
     }
 
-    private void mergeLinearNeighbours(Set<Node> candidates, WorldChunk chunk) {
+    private void mergeLinearNeighbours(Set<Node> candidates, Function<Vector3i, WorldChunk> chunkAt) {
         boolean changed = true;
         while (changed) {
             changed = false;
@@ -377,18 +869,18 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
                 if (!nodes.contains(node)) continue;
                 if (!node.storage.isPipe()) continue;
 
-                int physicalConns = countPhysicalConnections(node.blocks, chunk);
+                int physicalConns = countPhysicalConnections(node.blocks, chunkAt);
                 if (physicalConns > 2) continue;
 
                 if (node.connectedEdges.size() > 2) continue;
 
                 for (Edge e : new ArrayList<>(node.connectedEdges)) {
-                    Node neighbour = e.other(node);
+                    Node neighbour = other(e, node);
                     if (neighbour == null) continue;
                     if (!nodes.contains(neighbour)) continue;
                     if (!neighbour.storage.isPipe()) continue;
 
-                    int neighbourPhysicalConns = countPhysicalConnections(neighbour.blocks, chunk);
+                    int neighbourPhysicalConns = countPhysicalConnections(neighbour.blocks, chunkAt);
                     if (neighbourPhysicalConns > 2) continue;
 
                     if (neighbour.connectedEdges.size() > 2) continue;
@@ -402,20 +894,22 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
         }
     }
 
-    private int countPhysicalConnections(Set<Vector3i> blockSet, WorldChunk chunk) {
-        return (int) blockSet.stream()
-                .flatMap(p -> BlockUtil.getConnections(chunk, p).stream())
-                .filter(c -> !blockSet.contains(c))
-                .distinct()
-                .count();
+    private int countPhysicalConnections(LongHashSet blockSet, Function<Vector3i, WorldChunk> chunkAt) {
+        return countExternalConnections(blockSet, chunkAt);
     }
 
-    private int countExternalConnections(Set<Vector3i> blockSet, WorldChunk chunk) {
-        return (int) blockSet.stream()
-                .flatMap(p -> BlockUtil.getConnections(chunk, p).stream())
-                .filter(c -> !blockSet.contains(c))
-                .distinct()
-                .count();
+    private int countExternalConnections(LongHashSet blockSet, Function<Vector3i, WorldChunk> chunkAt) {
+        LongHashSet external = new LongHashSet();
+        blockSet.forEach(b -> {
+            Vector3i pos = BlockUtil.unpack(b);
+            byte mask = BlockUtil.readFromWorld(chunkAt.apply(pos), pos);
+            for (int i = 0; i < BlockUtil.FACE_BITS.length; i++) {
+                if ((mask & BlockUtil.FACE_BITS[i]) == 0) continue;
+                long c = BlockUtil.offset(b, BlockUtil.FACE_OFFSETS[i]);
+                if (!blockSet.contains(c)) external.add(c);
+            }
+        });
+        return external.size();
     }
 
     private void mergeInto(Node target, Node absorbed) {
@@ -423,13 +917,13 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
 
         List<Edge> absorbedEdges = new ArrayList<>(absorbed.connectedEdges); // Snapshot
         for (Edge e : absorbedEdges) {
-            if (e.other(absorbed) == target) {
+            if (other(e, absorbed) == target) {
                 target.connectedEdges.remove(e);
                 continue;
             }
             target.connectedEdges.add(e);
 
-            Node other = e.other(absorbed);
+            Node other = other(e, absorbed);
             if (other != null) {
                 other.connectedEdges.remove(e);
                 other.connectedEdges.add(e);
@@ -437,44 +931,24 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
         }
         absorbed.connectedEdges.clear();
 
-        for (Vector3i b : absorbed.blocks) {
+        absorbed.blocks.forEach(b -> {
             target.blocks.add(b);
-            nodeMap.put(b, target);
-        }
+            indexBlock(b, target);
+        });
         nodes.remove(absorbed);
+        schedule.cancel(absorbed);
     }
 
-    private void addEdge(WorldChunk chunk, Vector3i fromPos, Vector3i toPos, C storage) {
-        Node a = nodeMap.get(fromPos);
-        Node b = nodeMap.get(toPos);
+    private void addEdge(Function<Vector3i, WorldChunk> chunkAt, Vector3i fromPos, Vector3i toPos, C storage) {
+        Node a = nodeAt(fromPos);
+        Node b = nodeAt(toPos);
         if (a == null || b == null) return;
         for (Edge existing : a.connectedEdges) {
-            if (existing.other(a) == b) return;
-        }
-
-        String fromType;
-        Map<Vector3i, String> connectionPointsA = a.storage.getConnectionPoints();
-        if (connectionPointsA == null) {
-            fromType = DEFAULT_CONNECTION_TYPE;
-        } else {
-            @SuppressWarnings("removal")
-            Map<Vector3i, String> rotatedA = BlockUtil.rotateConnectionPoints(
-                    connectionPointsA, chunk.getRotation(fromPos.x, fromPos.y, fromPos.z));
-            Vector3i dirAtoB = new Vector3i(toPos.x - fromPos.x, toPos.y - fromPos.y, toPos.z - fromPos.z);
-            fromType = rotatedA.get(dirAtoB);
+            if (other(existing, a) == b) return;
         }
 
-        String toType;
-        Map<Vector3i, String> connectionPointsB = b.storage.getConnectionPoints();
-        if (connectionPointsB == null) {
-            toType = DEFAULT_CONNECTION_TYPE;
-        } else {
-            @SuppressWarnings("removal")
-            Map<Vector3i, String> rotatedB = BlockUtil.rotateConnectionPoints(
-                    connectionPointsB, chunk.getRotation(toPos.x, toPos.y, toPos.z));
-            Vector3i dirBtoA = new Vector3i(fromPos.x - toPos.x, fromPos.y - toPos.y, fromPos.z - toPos.z);
-            toType = rotatedB.get(dirBtoA);
-        }
+        String fromType = portType(a.storage, chunkAt.apply(fromPos), fromPos, toPos);
+        String toType   = portType(b.storage, chunkAt.apply(toPos), toPos, fromPos);
 
         Edge edge = new Edge(new Vector3i(fromPos), new Vector3i(toPos), fromType, toType);
         edge.flux = storage.copy().zero();
@@ -482,18 +956,29 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
         b.connectedEdges.add(edge);
     }
 
-    private void splitNode(Vector3i junctionPos, WorldChunk chunk) {
-        Node oldNode = nodeMap.get(junctionPos);
+    /**
+     * Connection type of the port of the block at {@code pos} facing {@code towards}.
+     */
+    private String portType(C storage, WorldChunk chunk, Vector3i pos, Vector3i towards) {
+        PortLayout layout = storage.getPortLayout();
+        if (layout == null) return DEFAULT_CONNECTION_TYPE;
+        @SuppressWarnings("removal")
+        RotationTuple rotation = chunk.getRotation(pos.x, pos.y, pos.z);
+        return layout.portAt(rotation, BlockUtil.faceIndex(towards.x - pos.x, towards.y - pos.y, towards.z - pos.z));
+    }
+
+    private void splitNode(Vector3i junctionPos) {
+        Node oldNode = nodeAt(junctionPos);
         if (oldNode == null) return;
 
         nodes.remove(oldNode);
+        schedule.cancel(oldNode);
 
-        Node junctionNode = new Node(world.getEntityStore()
-                .getStore()
-                .getResource(TimeResource.getResourceType()).getNow());
-        junctionNode.blocks.add(new Vector3i(junctionPos));
+        Node junctionNode = new Node(now());
+        long junction = BlockUtil.pack(junctionPos);
+        junctionNode.blocks.add(junction);
         junctionNode.storage = oldNode.storage.partition(1, oldNode.blocks.size() - 1)[0];
-        nodeMap.put(new Vector3i(junctionPos), junctionNode);
+        indexBlock(junction, junctionNode);
         nodes.add(junctionNode);
 
         for (Edge e : oldNode.connectedEdges) {
@@ -502,34 +987,13 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
             }
         }
 
-        Set<Vector3i> unvisited = new LinkedHashSet<>(oldNode.blocks);
-        unvisited.remove(junctionPos);
+        LongHashSet unvisited = new LongHashSet(oldNode.blocks);
+        unvisited.remove(junction);
 
-        for (Vector3i b : unvisited) nodeMap.remove(b);
+        unvisited.forEach(this::unindexBlock);
 
         while (!unvisited.isEmpty()) {
-            Vector3i seed = unvisited.iterator().next();
-            unvisited.remove(seed);
-
-            Node seg = new Node(world.getEntityStore()
-                    .getStore()
-                    .getResource(TimeResource.getResourceType()).getNow());
-            seg.blocks.add(new Vector3i(seed));
-            nodeMap.put(new Vector3i(seed), seg);
-
-            Queue<Vector3i> bfs = new ArrayDeque<>();
-            bfs.add(seed);
-            while (!bfs.isEmpty()) {
-                Vector3i cur = bfs.poll();
-                for (Vector3i offset : BlockUtil.FACE_OFFSETS) {
-                    Vector3i adj = new Vector3i(cur).add(offset);
-                    if (unvisited.remove(adj)) {
-                        seg.blocks.add(new Vector3i(adj));
-                        nodeMap.put(new Vector3i(adj), seg);
-                        bfs.add(adj);
-                    }
-                }
-            }
+            Node seg = buildSegment(unvisited);
 
             @SuppressWarnings("unchecked")
             C[] parts = oldNode.storage.partition(seg.blocks.size(), oldNode.blocks.size() - seg.blocks.size());
@@ -537,25 +1001,20 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
 
             for (Edge e : oldNode.connectedEdges) {
                 if (junctionNode.connectedEdges.contains(e)) continue;
-                if (seg.blocks.contains(e.from) || seg.blocks.contains(e.to)) {
+                if (seg.blocks.contains(BlockUtil.pack(e.from)) || seg.blocks.contains(BlockUtil.pack(e.to))) {
                     seg.connectedEdges.add(e);
                 }
             }
 
-            boolean adjacentToJunction = false;
             Vector3i segBoundary = null;
-            outer:
-            for (Vector3i b : seg.blocks) {
-                for (Vector3i offset : BlockUtil.FACE_OFFSETS) {
-                    if (new Vector3i(b).add(offset).equals(junctionPos)) {
-                        adjacentToJunction = true;
-                        segBoundary = new Vector3i(b);
-                        break outer;
-                    }
+            for (Vector3i offset : BlockUtil.FACE_OFFSETS) {
+                if (seg.blocks.contains(BlockUtil.pack(junctionPos, offset))) {
+                    segBoundary = new Vector3i(junctionPos).add(offset);
+                    break;
                 }
             }
 
-            if (adjacentToJunction) {
+            if (segBoundary != null) {
                 Edge newEdge = new Edge(new Vector3i(segBoundary), new Vector3i(junctionPos), DEFAULT_CONNECTION_TYPE, DEFAULT_CONNECTION_TYPE);
                 newEdge.flux = oldNode.storage.zero();
                 seg.connectedEdges.add(newEdge);
@@ -566,108 +1025,184 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
         }
     }
 
-    private Node buildSegment(Set<Vector3i> unvisited) {
-        Vector3i seed = unvisited.iterator().next();
+    /**
+     * Moves the blocks face-connected to an arbitrary seed out of {@code unvisited} into a new node.
+     */
+    private Node buildSegment(LongHashSet unvisited) {
+        long seed = unvisited.first();
         unvisited.remove(seed);
 
-        Node seg = new Node(world.getEntityStore()
-                .getStore()
-                .getResource(TimeResource.getResourceType()).getNow());
-        seg.blocks.add(new Vector3i(seed));
-        nodeMap.put(new Vector3i(seed), seg);
+        Node seg = new Node(now());
+        seg.blocks.add(seed);
+        indexBlock(seed, seg);
 
-        Queue<Vector3i> bfs = new ArrayDeque<>();
-        bfs.add(seed);
-        while (!bfs.isEmpty()) {
-            Vector3i cur = bfs.poll();
+        long[] bfs = new long[unvisited.size() + 1];
+        int head = 0, tail = 0;
+        bfs[tail++] = seed;
+        while (head < tail) {
+            long cur = bfs[head++];
             for (Vector3i offset : BlockUtil.FACE_OFFSETS) {
-                Vector3i adj = new Vector3i(cur).add(offset);
+                long adj = BlockUtil.offset(cur, offset);
                 if (unvisited.remove(adj)) {
-                    seg.blocks.add(new Vector3i(adj));
-                    nodeMap.put(new Vector3i(adj), seg);
-                    bfs.add(adj);
+                    seg.blocks.add(adj);
+                    indexBlock(adj, seg);
+                    bfs[tail++] = adj;
                 }
             }
         }
         return seg;
     }
 
-    private List<BlockNetwork<C>> detectSplit() {
-        if (nodes.isEmpty()) return Collections.emptyList();
-
-        Set<Node> visited = new HashSet<>();
-        Queue<Node> bfs = new ArrayDeque<>();
-        Node start = nodes.iterator().next();
-        bfs.add(start);
-        visited.add(start);
-        while (!bfs.isEmpty()) {
-            Node cur = bfs.poll();
-            for (Edge e : cur.connectedEdges) {
-                Node nb = e.other(cur);
-                if (nb != null && visited.add(nb)) bfs.add(nb);
-            }
+    /**
+     * Splits off the parts of this network that lost their connection on a block removal.
+     * <p>
+     * Every fragment contains at least one of {@code seeds}, the nodes around the removed block.
+     * A BFS is started from each seed, and the searches advance one node at a time in turns.
+     * Searches that reach each other are joined. A search that runs dry before meeting the others
+     * has enumerated a complete fragment, which is moved into a new network. Once a single search
+     * is left, its fragment stays in this network without being walked any further, so the cost
+     * scales with the size of the fragments split off rather than with the whole network.
+     */
+    private List<BlockNetwork<C>> detectSplit(Collection<Node> seeds) {
+        Set<Node> distinct = new LinkedHashSet<>();
+        for (Node seed : seeds) if (nodes.contains(seed)) distinct.add(seed);
+        List<Node> starts = new ArrayList<>(distinct);
+        if (starts.size() < 2) return Collections.emptyList();
+
+        int count = starts.size();
+        int[] parent = new int[count];
+        @SuppressWarnings("unchecked")
+        ArrayDeque<Node>[] queues = new ArrayDeque[count];
+        @SuppressWarnings("unchecked")
+        List<Node>[] members = new List[count];
+        // Nodes stamped with this search carry the label of the search that reached them first.
+        long stamp = EPOCHS.incrementAndGet();
+        for (int i = 0; i < count; i++) {
+            parent[i] = i;
+            queues[i] = new ArrayDeque<>();
+            queues[i].add(starts.get(i));
+            members[i] = new ArrayList<>();
+            members[i].add(starts.get(i));
+            starts.get(i).splitEpoch = stamp;
+            starts.get(i).splitLabel = i;
         }
 
-        if (visited.size() == nodes.size()) return Collections.emptyList();
-
         List<BlockNetwork<C>> splits = new ArrayList<>();
-        Set<Node> remaining = new HashSet<>(nodes);
-        remaining.removeAll(visited);
-        nodes.retainAll(visited);
-
-        while (!remaining.isEmpty()) {
-            Set<Node> component = new HashSet<>();
-            Queue<Node> q = new ArrayDeque<>();
-            Node seed = remaining.iterator().next();
-            q.add(seed);
-            component.add(seed);
-            while (!q.isEmpty()) {
-                Node cur = q.poll();
-                for (Edge e : cur.connectedEdges) {
-                    Node nb = e.other(cur);
-                    if (nb != null && component.add(nb)) q.add(nb);
+        int active = count;
+        while (active > 1) {
+            for (int g = 0; g < count && active > 1; g++) {
+                if (parent[g] != g || queues[g] == null) continue;
+
+                if (queues[g].isEmpty()) {
+                    splits.add(moveToNewNetwork(members[g]));
+                    queues[g] = null;
+                    members[g] = null;
+                    active--;
+                    continue;
                 }
-            }
-            remaining.removeAll(component);
-
-            BlockNetwork<C> newNetwork = factory.get();
-            for (Node n : component) {
-                newNetwork.nodes.add(n);
-                for (Vector3i b : n.blocks) {
-                    newNetwork.nodeMap.put(b, n);
-                    nodeMap.remove(b);
+
+                Node cur = queues[g].poll();
+                int owner = g;
+                for (Edge e : cur.connectedEdges) {
+                    Node nb = other(e, cur);
+                    if (nb == null) continue;
+
+                    if (nb.splitEpoch != stamp) {
+                        nb.splitEpoch = stamp;
+                        nb.splitLabel = owner;
+                        queues[owner].add(nb);
+                        members[owner].add(nb);
+                        continue;
+                    }
+
+                    int a = owner, b = find(parent, nb.splitLabel);
+                    if (a == b) continue;
+                    // Join the smaller search into the larger one.
+                    if (members[a].size() < members[b].size()) { int t = a; a = b; b = t; }
+                    parent[b] = a;
+                    queues[a].addAll(queues[b]);
+                    members[a].addAll(members[b]);
+                    queues[b] = null;
+                    members[b] = null;
+                    owner = a;
+                    active--;
                 }
             }
-            splits.add(newNetwork);
         }
-
         return splits;
     }
 
+    static int find(int[] parent, int i) {
+        while (parent[i] != i) i = parent[i] = parent[parent[i]];
+        return i;
+    }
+
+    private BlockNetwork<C> moveToNewNetwork(List<Node> component) {
+        BlockNetwork<C> newNetwork = factory.get();
+        newNetwork.owners = owners;
+        newNetwork.world = world;
+        for (Node n : component) {
+            nodes.remove(n);
+            newNetwork.adopt(n, this);
+        }
+        return newNetwork;
+    }
+
+    /**
+     * Takes over {@code node} from {@code source}, which must already have dropped it from its node set.
+     * The node keeps its state, edges and pending update.
+     */
+    private void adopt(Node node, BlockNetwork<C> source) {
+        nodes.add(node);
+        if (node.visitedEpoch == source.lastEpoch) {
+            node.visitedEpoch = lastEpoch;
+            visitedNodes.add(node);
+        }
+        // Schedule entries are intrusive, so a pending update has to move along with its node.
+        if (node.isScheduled()) {
+            long deadline = node.deadline();
+            source.schedule.cancel(node);
+            schedule.insert(node, deadline);
+        }
+        node.blocks.forEach(b -> {
+            indexBlock(b, node);
+            source.unindexBlock(b);
+        });
+    }
+
     public boolean containsBlock(Vector3i pos) {
-        return nodeMap.containsKey(pos);
+        return nodeMap.containsKey(BlockUtil.pack(pos));
     }
 
     public boolean isAdjacentTo(Vector3i pos) {
         for (int i = 0; i < BlockUtil.FACE_OFFSETS.length; i++) {
-            if (nodeMap.containsKey(new Vector3i(pos).add(BlockUtil.FACE_OFFSETS[i]))) return true;
+            if (nodeMap.containsKey(BlockUtil.pack(pos, BlockUtil.FACE_OFFSETS[i]))) return true;
         }
         return false;
     }
 
     public boolean isEmpty() { return nodes.isEmpty() && nodeMap.isEmpty(); }
 
+    int blockCount() { return nodeMap.size(); }
+
     public C getComponent(Vector3i vec) {
-        Node n = nodeMap.get(vec);
-        return n != null ? n.storage : null;
+        Node n = nodeAt(vec);
+        if (n == null) return null;
+        // The simulation thread owns the compiled state, the component holds the last published state.
+        if (!BlockNetworkManager.SIMULATION_THREAD && compiled != null && compiled.contains(n))
+            compiled.state.store(n.index, n.storage);
+        return n.storage;
     }
 
     public void clear() {
+        compiled = null;
+        if (owners != null) nodes.forEach(node -> node.blocks.forEach(this::unindexBlock));
         nodeMap.clear();
         nodes.forEach(node -> node.connectedEdges.clear());
         nodes.clear();
         schedule.clear();
         visitedNodes.clear();
+        snapshot = BlockNetworkSnapshot.EMPTY;
     }
 
     public abstract void runOnBlockAdded();
@@ -675,12 +1210,15 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
     protected abstract BuilderCodec<C> getComponentCodec();
 
     public NodeDTO<C>[] serializeNodes() {
+        syncStorage();
         @SuppressWarnings("unchecked")
         NodeDTO<C>[] result = new NodeDTO[nodes.size()];
         int i = 0;
         for (Node node : nodes) {
             NodeDTO<C> dto = new NodeDTO<>();
-            dto.blocks  = node.blocks.toArray(new Vector3i[0]);
+            long[] blocks = node.blocks.toArray();
+            dto.blocks  = new Vector3i[blocks.length];
+            for (int j = 0; j < blocks.length; j++) dto.blocks[j] = BlockUtil.unpack(blocks[j]);
             dto.storage = node.storage;
             result[i++] = dto;
         }
@@ -688,6 +1226,7 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
     }
 
     public EdgeDTO<C>[] serializeEdges() {
+        syncStorage();
         Set<Edge> seen = new HashSet<>();
         List<EdgeDTO<C>> result = new ArrayList<>();
         for (Node node : nodes) {
@@ -711,47 +1250,50 @@ public abstract class BlockNetwork<C extends BlockNetworkComponent<C>> {
     public void deserializeNodes(NodeDTO<C>[] nodeDTOs) {
         clear();
         for (NodeDTO<C> dto : nodeDTOs) {
-            Node node = new Node(world.getEntityStore()
-                    .getStore()
-                    .getResource(TimeResource.getResourceType()).getNow());
+            Node node = new Node(now());
             node.storage = dto.storage;
             for (Vector3i p : dto.blocks) {
-                node.blocks.add(p);
-                nodeMap.put(p, node);
+                long b = BlockUtil.pack(p);
+                node.blocks.add(b);
+                indexBlock(b, node);
             }
             nodes.add(node);
+            // Sleeping nodes stay asleep until woken, but active ones pick up where they were saved.
+            if (node.storage.isActive()) schedule.insert(node, Schedule.IMMEDIATELY);
         }
     }
 
     public void deserializeEdges(EdgeDTO<C>[] edgeDTOs) {
+        invalidateCompiled();
         for (EdgeDTO<C> dto : edgeDTOs) {
             Edge edge = new Edge(dto.from, dto.to, dto.fromType, dto.toType);
             edge.flux = dto.flux;
-            Node fromNode = nodeMap.get(dto.from);
-            Node toNode   = nodeMap.get(dto.to);
+            Node fromNode = nodeAt(dto.from);
+            Node toNode   = nodeAt(dto.to);
             if (fromNode != null) fromNode.connectedEdges.add(edge);
             if (toNode   != null) toNode.connectedEdges.add(edge);
         }
     }
 
+    /**
+     * Moves all nodes and edges of {@code other} into this network, leaving {@code other} empty.
+     * Costs O(size of other), so callers should merge the smaller network into the larger one.
+     */
     public void mergeFrom(BlockNetwork<C> other) {
-        NodeDTO<C>[] otherNodes = other.serializeNodes();
-        EdgeDTO<C>[] otherEdges = other.serializeEdges();
-        NodeDTO<C>[] thisNodes  = serializeNodes();
-        EdgeDTO<C>[] thisEdges  = serializeEdges();
-
-        @SuppressWarnings("unchecked")
-        NodeDTO<C>[] mergedNodes = new NodeDTO[thisNodes.length + otherNodes.length];
-        System.arraycopy(thisNodes,  0, mergedNodes, 0,                thisNodes.length);
-        System.arraycopy(otherNodes, 0, mergedNodes, thisNodes.length, otherNodes.length);
-
-        @SuppressWarnings("unchecked")
-        EdgeDTO<C>[] mergedEdges = new EdgeDTO[thisEdges.length + otherEdges.length];
-        System.arraycopy(thisEdges,  0, mergedEdges, 0,                thisEdges.length);
-        System.arraycopy(otherEdges, 0, mergedEdges, thisEdges.length, otherEdges.length);
-
-        deserializeNodes(mergedNodes);
-        deserializeEdges(mergedEdges);
+        invalidateCompiled();
+        other.invalidateCompiled();
+        for (Node n : other.nodes) adopt(n, other);
+        other.nodes.clear();
+        other.visitedNodes.clear();
+
+        // Deferred work of a batch follows the blocks it was recorded for.
+        if (other.batchSplitSeeds != null) {
+            beginBatch();
+            other.batchSplitSeeds.forEach(batchSplitSeeds::add);
+            other.batchWaves.forEach(batchWaves::add);
+            other.batchSplitSeeds = null;
+            other.batchWaves = null;
+        }
     }
 
     public static <C extends BlockNetworkComponent<C>, R extends BlockNetwork<C>>
@@ -2,6 +2,7 @@ package com.karolex.hydrodynamics.blocknetwork;
 
 import com.hypixel.hytale.math.vector.Vector3i;
 import com.hypixel.hytale.server.core.universe.world.World;
+import com.karolex.hydrodynamics.util.PortLayout;
 
 import javax.annotation.Nullable;
 import java.time.Duration;
@@ -9,11 +10,27 @@ import java.util.Map;
 
 public interface BlockNetworkComponent<C extends BlockNetworkComponent<C>> {
 
+    /** Delay of {@link #computeDelayNanos} for components that sleep until the next update wave. */
+    long SLEEP = Long.MAX_VALUE;
+
     // Arithmetic Methods
     C add(C flux);
     C del(C flux);
     C mergeComponents(C flux);
-    C calculateFlux(C from, C to, String fromType, String toType);
+    default C calculateFlux(C from, C to, String fromType, String toType) {
+        return calculateFlux(from, to, fromType, toType, zero());
+    }
+
+    /** Writes the flux between {@code from} and {@code to} into {@code into} and returns it. */
+    C calculateFlux(C from, C to, String fromType, String toType, C into);
+
+    /**
+     * As above, with the port types as {@link ConnectionTypes} ids, which is how ticks call it.
+     * Override to dispatch on the ids without resolving their names.
+     */
+    default C calculateFlux(C from, C to, int fromType, int toType, C into) {
+        return calculateFlux(from, to, ConnectionTypes.name(fromType), ConnectionTypes.name(toType), into);
+    }
     C[] partition(int left_size, int right_size);
     C zero();
 
@@ -29,10 +46,27 @@ public interface BlockNetworkComponent<C extends BlockNetworkComponent<C>> {
     void tick(float dt);
 
     @Nullable
-    Duration computeDelay(float dt, C previous, boolean isCapped);
+    default Duration computeDelay(float dt, C previous, boolean isCapped) {
+        long delay = computeDelayNanos(dt, previous.delayMetric(), isCapped);
+        return delay == SLEEP ? null : Duration.ofNanos(delay);
+    }
+
+    /** Scalar state compared between two updates by {@link #computeDelayNanos}, e.g. the pressure. */
+    double delayMetric();
+
+    /** Nanoseconds until the next update, or {@link #SLEEP}. */
+    long computeDelayNanos(float dt, double previousMetric, boolean isCapped);
     boolean isActive();
 
     // To be implemented in default position (as for example in the blockbench editor). Return null for default.
     Map<Vector3i, String> getConnectionPoints();
 
+    // Rotated form of getConnectionPoints(), null for default. Cached by map identity, so return the same
+    // map for every component of a type. Override to skip the lookup for hot types.
+    @Nullable
+    default PortLayout getPortLayout() {
+        Map<Vector3i, String> connectionPoints = getConnectionPoints();
+        return connectionPoints == null ? null : PortLayout.of(connectionPoints);
+    }
+
 }
@@ -1,7 +1,11 @@
 package com.karolex.hydrodynamics.blocknetwork;
 
+import com.hypixel.hytale.math.util.ChunkUtil;
 import com.hypixel.hytale.server.core.modules.time.TimeResource;
 import com.karolex.hydrodynamics.util.BlockUtil;
+import com.karolex.hydrodynamics.util.LongHashSet;
+import com.karolex.hydrodynamics.util.LongObjectMap;
+import com.karolex.hydrodynamics.util.Schedule;
 import com.hypixel.hytale.codec.KeyedCodec;
 import com.hypixel.hytale.codec.builder.BuilderCodec;
 import com.hypixel.hytale.codec.codecs.array.ArrayCodec;
@@ -13,84 +17,602 @@ import com.hypixel.hytale.server.core.universe.world.chunk.WorldChunk;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import org.jspecify.annotations.Nullable;
 
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 public class BlockNetworkManager<C extends BlockNetworkComponent<C>, N extends BlockNetwork<C>>
         implements Resource<EntityStore> {
 
-    protected final List<N> networks = new ArrayList<>();
+    /**
+     * Worker threads for ticking independent networks in parallel, set with {@code -Dhydrodynamics.tickThreads=N}.
+     * 0 (the default) ticks every network on the world thread.
+     */
+    public static final int TICK_THREADS = Math.max(0, Integer.getInteger("hydrodynamics.tickThreads", 0));
+    private static final ForkJoinPool TICK_POOL = TICK_THREADS > 0 ? new ForkJoinPool(TICK_THREADS) : null;
+
+    /**
+     * Runs the network ticks on a simulation thread per world, set with {@code -Dhydrodynamics.simulationThread=true}.
+     * Each world tick first waits for the previous simulation step, publishes its results and applies the
+     * queued block events, then starts the next step and returns. Topology changes from the outside wait
+     * for the running step. Combines with {@link #TICK_THREADS}.
+     */
+    public static final boolean SIMULATION_THREAD = Boolean.getBoolean("hydrodynamics.simulationThread");
+    // A manager has at most one step in flight, so the steps of different worlds run side by side.
+    private static final ExecutorService SIMULATION_EXECUTOR = SIMULATION_THREAD
+            ? Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "Hydrodynamics-Simulation");
+                thread.setDaemon(true);
+                return thread;
+            })
+            : null;
+
+    protected final Set<N> networks = new LinkedHashSet<>();
     private final Supplier<N> factory;
 
+    // World owning this manager's store, null until bind().
+    private World world;
+
+    // Owning network by packed block position, maintained by the networks themselves.
+    private final NetworkIndex<C> networkIndex = new NetworkIndex<>();
+
+    // Networks keyed by their earliest pending node update. Networks without pending work are not queued at all.
+    private final Schedule<N> queue = BlockNetwork.SCHEDULE_TYPE.create(BlockNetwork.SCHEDULE_RESOLUTION_NANOS);
+    private final List<N> dueNetworks = new ArrayList<>();
+
+    // Block events waiting for the next flush, guarded by pendingEvents. The map holds the latest
+    // event per packed position, so events at the same position can cancel each other out.
+    private final List<TopologyEvent> pendingEvents = new ArrayList<>();
+    private final LongObjectMap<TopologyEvent> latestEvents = new LongObjectMap<>();
+
+    // Networks touched while a batch is applied, null outside of flushEvents().
+    private Set<N> batchNetworks;
+
+    // Networks whose snapshots are out of date, republished once per tick.
+    private final Set<N> unpublished = new LinkedHashSet<>();
+
+    // Simulation step of dueNetworks in flight, null if there is none. See SIMULATION_THREAD.
+    private Future<?> simulation;
+    // World of the queued block events, flushed by tick() when running a simulation thread.
+    private World pendingWorld;
+
     public BlockNetworkManager(Supplier<N> factory) {
         this.factory = factory;
     }
 
-    public void tick() {
-        for (N network : networks) network.tick();
+    public void tick(Instant time) {
+        long now = BlockNetwork.toNanos(time);
+
+        if (SIMULATION_EXECUTOR != null) {
+            awaitSimulation();
+            World world;
+            synchronized (pendingEvents) {
+                world = pendingWorld;
+                pendingWorld = null;
+            }
+            if (world != null) flushEvents(world);
+
+            publishSnapshots();
+
+            N due;
+            while ((due = queue.poll(now)) != null) dueNetworks.add(due);
+            for (N network : dueNetworks) network.compile();
+            if (!dueNetworks.isEmpty()) simulation = SIMULATION_EXECUTOR.submit(() -> simulate(now));
+            return;
+        }
+
+        // Drain first: a network that is due again right after its tick waits for the next one.
+        N due;
+        while ((due = queue.poll(now)) != null) dueNetworks.add(due);
+
+        if (TICK_POOL != null && dueNetworks.size() > 1) {
+            // Networks share no nodes or edges, only their world updates have to wait for the world thread.
+            for (N network : dueNetworks) network.compile();
+            TICK_POOL.invoke(new TickTask<>(dueNetworks, 0, dueNetworks.size(), now));
+            for (N network : dueNetworks) {
+                network.publish();
+                network.runDeferredWorldUpdates();
+            }
+        } else {
+            for (N network : dueNetworks) network.tick(now, false);
+        }
+
+        for (N network : dueNetworks) reschedule(network);
+        dueNetworks.clear();
+        publishSnapshots();
+    }
+
+    /**
+     * Whether {@link #tick} has nothing to do: no network has a pending update, and nothing is waiting to
+     * be applied or published. Networks asleep at equilibrium are not queued, so they cost nothing.
+     */
+    public boolean isIdle() {
+        if (!queue.isEmpty() || simulation != null || !unpublished.isEmpty() || !networkIndex.isPublished()) return false;
+        synchronized (pendingEvents) {
+            return pendingWorld == null;
+        }
+    }
+
+    // Republishes the snapshots of the networks that ticked or changed since the last call.
+    private void publishSnapshots() {
+        for (N network : unpublished) {
+            if (networks.contains(network)) network.publishSnapshot();
+        }
+        unpublished.clear();
+        networkIndex.publish();
+    }
+
+    /**
+     * Snapshot of the network containing {@code pos} as of the last tick, or null. Safe to call from
+     * any thread.
+     */
+    public @Nullable BlockNetworkSnapshot snapshotAt(Vector3i pos) {
+        BlockNetwork<C> network = networkIndex.readableAt(BlockUtil.pack(pos));
+        return network == null ? null : network.snapshot();
+    }
+
+    // Runs on the simulation thread. World updates are deferred to awaitSimulation().
+    private void simulate(long now) {
+        if (TICK_POOL != null && dueNetworks.size() > 1) {
+            TICK_POOL.invoke(new TickTask<>(dueNetworks, 0, dueNetworks.size(), now));
+        } else {
+            for (N network : dueNetworks) network.tick(now, true);
+        }
+    }
+
+    /**
+     * Waits for the running simulation step, then publishes its results into the components, runs its
+     * world updates and requeues its networks. Must be called on the world thread before changing any
+     * network, and is a no-op without {@link #SIMULATION_THREAD}.
+     */
+    protected void awaitSimulation() {
+        if (simulation == null) return;
+        try {
+            simulation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+        simulation = null;
+
+        for (N network : dueNetworks) {
+            network.publish();
+            network.runDeferredWorldUpdates();
+            reschedule(network);
+        }
+        dueNetworks.clear();
+    }
+
+    private static final class TickTask<N extends BlockNetwork<?>> extends RecursiveAction {
+        private final List<N> networks;
+        private final int from;
+        private final int to;
+        private final long now;
+
+        TickTask(List<N> networks, int from, int to, long now) {
+            this.networks = networks;
+            this.from = from;
+            this.to = to;
+            this.now = now;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                networks.get(from).tick(now, true);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TickTask<>(networks, from, mid, now), new TickTask<>(networks, mid, to, now));
+        }
+    }
+
+    /**
+     * Binds this manager and its networks to the world owning its store. Resources are created without
+     * knowing their world, so the systems bind it on the world thread before using the manager.
+     */
+    public void bind(World world) {
+        if (this.world == world) return;
+        awaitSimulation();
+        this.world = world;
+        for (N network : networks) network.attachWorld(world);
+    }
+
+    protected void addNetwork(N network) {
+        networks.add(network);
+        network.attachIndex(networkIndex);
+        network.attachWorld(world);
+        reschedule(network);
+    }
+
+    @SuppressWarnings("unchecked")
+    private @Nullable N networkAt(Vector3i pos) {
+        return (N) networkIndex.get(BlockUtil.pack(pos));
+    }
+
+    private void reschedule(N network) {
+        unpublished.add(network);
+        long deadline = network.nextDeadline();
+        if (deadline == Long.MAX_VALUE) queue.cancel(network);
+        else queue.insert(network, deadline);
+    }
+
+    private void removeIfEmpty(N network) {
+        if (!network.isEmpty()) return;
+        networks.remove(network);
+        queue.cancel(network);
+    }
+
+    private static final byte PLACE = 0;
+    private static final byte REMOVE = 1;
+    private static final byte TOGGLE = 2;
+
+    private static final class TopologyEvent {
+        final byte kind;
+        final long pos;
+        final @Nullable BlockType blockType;
+        // Previous pending event at the same position.
+        final @Nullable TopologyEvent previous;
+        boolean cancelled;
+
+        TopologyEvent(byte kind, long pos, @Nullable BlockType blockType, @Nullable TopologyEvent previous) {
+            this.kind = kind;
+            this.pos = pos;
+            this.blockType = blockType;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * Queues a block placement at {@code pos}. The block type and component are read from the world
+     * when the batch is flushed, so the block has to be in the world by then. A placement that is
+     * still pending at the same position already covers this one, whatever block ends up there.
+     */
+    public void queueBlockPlaced(World world, Vector3i pos) {
+        synchronized (pendingEvents) {
+            long p = BlockUtil.pack(pos);
+            TopologyEvent latest = latestEvents.get(p);
+            if (latest != null && latest.kind == PLACE) return;
+            queue(world, new TopologyEvent(PLACE, p, null, latest));
+        }
+    }
+
+    /**
+     * Queues the removal of a block of {@code blockType} at {@code pos}. Cancels a placement at the same
+     * position that has not been applied yet, together with any toggles queued in between.
+     */
+    public void queueBlockRemoved(World world, Vector3i pos, BlockType blockType) {
+        synchronized (pendingEvents) {
+            long p = BlockUtil.pack(pos);
+            TopologyEvent latest = latestEvents.get(p);
+            while (latest != null && latest.kind == TOGGLE) {
+                latest.cancelled = true;
+                latest = latest.previous;
+            }
+            if (latest != null && latest.kind == PLACE) {
+                latest.cancelled = true;
+                if (latest.previous == null) latestEvents.remove(p);
+                else latestEvents.put(p, latest.previous);
+                return;
+            }
+            queue(world, new TopologyEvent(REMOVE, p, blockType, latest));
+        }
+    }
+
+    /**
+     * Queues a toggle of the block at {@code pos}, see {@link #onBlockToggled}. Two toggles in a row cancel out.
+     */
+    public void queueBlockToggled(World world, Vector3i pos) {
+        synchronized (pendingEvents) {
+            long p = BlockUtil.pack(pos);
+            TopologyEvent latest = latestEvents.get(p);
+            if (latest != null && latest.kind == TOGGLE) {
+                latest.cancelled = true;
+                if (latest.previous == null) latestEvents.remove(p);
+                else latestEvents.put(p, latest.previous);
+                return;
+            }
+            queue(world, new TopologyEvent(TOGGLE, p, null, latest));
+        }
+    }
+
+    private void queue(World world, TopologyEvent event) {
+        boolean first = pendingEvents.isEmpty();
+        pendingEvents.add(event);
+        latestEvents.put(event.pos, event);
+        if (!first) return;
+        // One flush per batch, however many events end up in it. The simulation thread gets its batch between two steps.
+        if (SIMULATION_EXECUTOR != null) pendingWorld = world;
+        else world.execute(() -> flushEvents(world));
+    }
+
+    /**
+     * Applies all queued block events as one batch: split detection and update waves are deferred
+     * until every event has been applied and then run once per touched network.
+     * Must be called on the world thread.
+     */
+    public void flushEvents(World world) {
+        bind(world);
+        awaitSimulation();
+        List<TopologyEvent> events;
+        synchronized (pendingEvents) {
+            if (pendingEvents.isEmpty()) return;
+            events = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+            latestEvents.clear();
+        }
+
+        batchNetworks = new LinkedHashSet<>();
+        try {
+            long chunkIndex = 0;
+            WorldChunk chunk = null;
+            // Consecutive placements are added in bulk, up to the next event of another kind.
+            List<BlockPlacement<C>> placements = new ArrayList<>();
+            LongHashSet placed = new LongHashSet();
+            for (TopologyEvent event : events) {
+                if (event.cancelled) continue;
+                int x = BlockUtil.unpackX(event.pos);
+                int y = BlockUtil.unpackY(event.pos);
+                int z = BlockUtil.unpackZ(event.pos);
+                try {
+                    // Batches tend to be local, so the chunk of the previous event is usually the right one.
+                    long index = ChunkUtil.indexChunkFromBlock(x, z);
+                    if (chunk == null || index != chunkIndex) {
+                        chunk = world.getChunk(index);
+                        chunkIndex = index;
+                    }
+                    Vector3i pos = new Vector3i(x, y, z);
+                    if (event.kind == PLACE) {
+                        // Only blocks of this network kind are batched, each position once.
+                        BlockType blockType = world.getBlockType(x, y, z);
+                        if (blockType == null) continue;
+                        C storage = createComponent(blockType);
+                        if (storage != null && placed.add(event.pos)) placements.add(new BlockPlacement<>(pos, chunk, storage, blockType));
+                        continue;
+                    }
+                    placeAll(placements);
+                    placed = new LongHashSet();
+                    if (event.kind == REMOVE) onBlockRemoved(pos, chunk, event.blockType);
+                    else onBlockToggled(pos);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            placeAll(placements);
+        } finally {
+            endBatch();
+        }
+    }
+
+    private void placeAll(List<BlockPlacement<C>> placements) {
+        if (placements.isEmpty()) return;
+        try {
+            onBlocksPlaced(placements);
+        } catch (Exception e) {
+            e.printStackTrace();
+            // One bad placement must not cost the others: apply whatever is missing block by block.
+            for (BlockPlacement<C> p : placements) {
+                if (networkAt(p.origin()) != null) continue;
+                try {
+                    onBlockPlaced(p.origin(), p.chunk(), p.storage(), p.blockType());
+                } catch (Exception single) {
+                    single.printStackTrace();
+                }
+            }
+        } finally {
+            placements.clear();
+        }
+    }
+
+    // Runs the split detection and waves deferred by touch().
+    private void endBatch() {
+        Set<N> touched = batchNetworks;
+        batchNetworks = null;
+        for (N network : touched) {
+            if (!networks.contains(network)) continue;
+            @SuppressWarnings("unchecked")
+            List<N> split = (List<N>) (List<?>) network.endBatch();
+            reschedule(network);
+            for (N n : split) addNetwork(n);
+            removeIfEmpty(network);
+        }
+    }
+
+    /**
+     * Creates the network component for a queued placement of {@code blockType},
+     * or returns null if the block does not belong to this kind of network.
+     */
+    protected @Nullable C createComponent(BlockType blockType) {
+        return null;
+    }
+
+    /**
+     * Applies a queued toggle of the block at {@code pos}. By default, only its update wave is triggered.
+     */
+    protected void onBlockToggled(Vector3i pos) {
+        triggerUpdateWave(pos);
+    }
+
+    // Defers the split detection and waves of a network touched during flushEvents().
+    private void touch(N network) {
+        if (batchNetworks != null && batchNetworks.add(network)) network.beginBatch();
     }
 
     public void onBlockPlaced(Vector3i origin, WorldChunk chunk, C storage, BlockType blockType) {
+        awaitSimulation();
         Set<Vector3i> occupied = BlockUtil.getOccupiedPositions(blockType, origin, chunk);
-        Set<Vector3i> externalConns = occupied.stream()
-                .flatMap(p -> BlockUtil.getConnections(chunk, p).stream())
-                .filter(c -> !occupied.contains(c))
-                .collect(Collectors.toCollection(LinkedHashSet::new));
-
-        List<N> neighbours = networks.stream()
-                .filter(n -> externalConns.stream().anyMatch(n::containsBlock))
-                .toList();
+        Function<Vector3i, WorldChunk> chunkAt = BlockNetwork.chunkLookup(world, origin, chunk);
+        List<N> neighbours = new ArrayList<>(2);
+        for (Vector3i p : occupied) {
+            for (Vector3i c : BlockUtil.getConnections(chunkAt.apply(p), p)) {
+                if (occupied.contains(c)) continue;
+                N neighbour = networkAt(c);
+                if (neighbour != null && !neighbours.contains(neighbour)) neighbours.add(neighbour);
+            }
+        }
 
         if (neighbours.isEmpty()) {
             N network = factory.get();
-            network.onBlockPlaced(origin, blockType, chunk, storage);
-            networks.add(network);
+            touch(network);
+            addNetwork(network);
+            network.onBlockPlaced(origin, occupied, chunk, storage);
+            reschedule(network);
+            removeIfEmpty(network);
         } else {
+            // Merging costs the size of the absorbed network, so the largest one absorbs the others.
             N primary = neighbours.getFirst();
-            for (int i = 1; i < neighbours.size(); i++) {
-                primary.mergeFrom(neighbours.get(i));
-                networks.remove(neighbours.get(i));
+            for (N n : neighbours) if (n.blockCount() > primary.blockCount()) primary = n;
+            touch(primary);
+            for (N n : neighbours) {
+                if (n == primary) continue;
+                primary.mergeFrom(n);
+                networks.remove(n);
+                        queue.cancel(n);
+            }
+            primary.onBlockPlaced(origin, occupied, chunk, storage);
+            reschedule(primary);
+            removeIfEmpty(primary);
+        }
+    }
+
+    /**
+     * Adds many blocks at once, e.g. for prefab pastes. The placements are labelled into connected
+     * groups first, so every group merges the networks it touches once and builds its nodes in one
+     * pass instead of merging and splitting nodes block by block as {@link #onBlockPlaced} would.
+     */
+    public void onBlocksPlaced(Collection<BlockPlacement<C>> placements) {
+        int count = placements.size();
+        if (count == 0) return;
+        awaitSimulation();
+        List<BlockPlacement<C>> list = new ArrayList<>(placements);
+        Function<Vector3i, WorldChunk> chunkAt = BlockNetwork.chunkLookup(world, list);
+
+        // 1.   Index all placements by position.
+        List<Set<Vector3i>> occupied = new ArrayList<>(count);
+        LongObjectMap<Integer> placementAt = new LongObjectMap<>(count);
+        for (int i = 0; i < count; i++) {
+            BlockPlacement<C> placement = list.get(i);
+            Set<Vector3i> occ = BlockUtil.getOccupiedPositions(placement.blockType(), placement.origin(), placement.chunk());
+            occupied.add(occ);
+            for (Vector3i p : occ) placementAt.put(BlockUtil.pack(p), i);
+        }
+
+        // 2.   Label connected components, remembering where they touch existing networks.
+        int[] parent = new int[count];
+        for (int i = 0; i < count; i++) parent[i] = i;
+        LongHashSet[] contacts = new LongHashSet[count];
+        for (int i = 0; i < count; i++) {
+            for (Vector3i p : occupied.get(i)) {
+                for (Vector3i c : BlockUtil.getConnections(chunkAt.apply(p), p)) {
+                    long packed = BlockUtil.pack(c);
+                    Integer j = placementAt.get(packed);
+                    if (j != null) {
+                        int a = BlockNetwork.find(parent, i), b = BlockNetwork.find(parent, j);
+                        if (a != b) parent[b] = a;
+                    } else if (networkIndex.containsKey(packed)) {
+                        if (contacts[i] == null) contacts[i] = new LongHashSet();
+                        contacts[i].add(packed);
+                    }
+                }
             }
-            primary.onBlockPlaced(origin, blockType, chunk, storage);
         }
 
-        networks.removeIf(BlockNetwork::isEmpty);
+        Map<Integer, List<Integer>> components = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            components.computeIfAbsent(BlockNetwork.find(parent, i), k -> new ArrayList<>()).add(i);
+        }
+
+        boolean ownBatch = batchNetworks == null;
+        if (ownBatch) batchNetworks = new LinkedHashSet<>();
+        try {
+            for (List<Integer> component : components.values()) {
+                // 3.   Touched networks are resolved only now, earlier components may have merged them.
+                List<N> neighbours = new ArrayList<>(2);
+                for (int i : component) {
+                    if (contacts[i] == null) continue;
+                    contacts[i].forEach(c -> {
+                        @SuppressWarnings("unchecked")
+                        N neighbour = (N) networkIndex.get(c);
+                        if (neighbour != null && !neighbours.contains(neighbour)) neighbours.add(neighbour);
+                    });
+                }
+
+                // 4.   Merge them into the largest one once, then add the whole component.
+                N primary = null;
+                for (N n : neighbours) if (primary == null || n.blockCount() > primary.blockCount()) primary = n;
+                if (primary == null) {
+                    primary = factory.get();
+                    addNetwork(primary);
+                }
+                touch(primary);
+                for (N n : neighbours) {
+                    if (n == primary) continue;
+                    primary.mergeFrom(n);
+                    networks.remove(n);
+                                queue.cancel(n);
+                }
+
+                List<BlockPlacement<C>> componentPlacements = new ArrayList<>(component.size());
+                List<Set<Vector3i>> componentOccupied = new ArrayList<>(component.size());
+                for (int i : component) {
+                    componentPlacements.add(list.get(i));
+                    componentOccupied.add(occupied.get(i));
+                }
+                try {
+                    primary.onBlocksPlaced(componentPlacements, componentOccupied);
+                    reschedule(primary);
+                } finally {
+                    // A failed component must not leave a freshly created network behind empty.
+                    removeIfEmpty(primary);
+                }
+            }
+        } finally {
+            if (ownBatch) endBatch();
+        }
     }
 
     public void onBlockRemoved(Vector3i origin, WorldChunk chunk, BlockType blockType) {
-        N network = networks.stream()
-                .filter(n -> n.containsBlock(origin))
-                .findFirst()
-                .orElse(null);
+        awaitSimulation();
+        N network = networkAt(origin);
         if (network == null) return;
+        touch(network);
 
         List<N> split = (List<N>) (List<?>) network.onBlockRemoved(origin, blockType, chunk);
 
-        networks.addAll(split);
-        networks.removeIf(BlockNetwork::isEmpty);
+        reschedule(network);
+        for (N n : split) addNetwork(n);
+        removeIfEmpty(network);
     }
 
     public void clear() {
+        awaitSimulation();
         networks.forEach(N::clear);
         networks.clear();
+        unpublished.clear();
+        networkIndex.clear();
+        queue.clear();
     }
 
     public C getComponent(Vector3i vec) {
-        for (N network : networks) {
-            C result = network.getComponent(vec);
-            if (result != null) return result;
-        }
-        return null;
+        N network = networkAt(vec);
+        return network == null ? null : network.getComponent(vec);
     }
 
     public void triggerUpdateWave(Vector3i pos) {
-        for (N network : networks) {
-            if (network.containsBlock(pos)) {
-                network.triggerUpdateWave(pos);
-                return;
-            }
-        }
+        awaitSimulation();
+        N network = networkAt(pos);
+        if (network == null) return;
+        touch(network);
+        network.triggerUpdateWave(pos);
+        reschedule(network);
     }
 
     @Override
@@ -102,8 +624,9 @@ public class BlockNetworkManager<C extends BlockNetworkComponent<C>, N extends B
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("BlockNetworkManager[").append(networks.size()).append(" networks]");
-        for (int i = 0; i < networks.size(); i++) {
-            sb.append("\n  [").append(i).append("] ").append(networks.get(i));
+        int i = 0;
+        for (N network : networks) {
+            sb.append("\n  [").append(i++).append("] ").append(network);
         }
         return sb.toString();
     }
@@ -119,9 +642,10 @@ public class BlockNetworkManager<C extends BlockNetworkComponent<C>, N extends B
         return BuilderCodec
                 .builder(clazz, managerFactory)
                 .append(new KeyedCodec<>("Networks", networkArrayCodec),
-                        (m, v) -> { m.networks.clear(); m.networks.addAll(Arrays.asList(v)); },
-                        m -> { @SuppressWarnings("unchecked")
-                        N[] array = (N[]) m.networks.toArray(new BlockNetwork[0]);
+                        (m, v) -> { m.clear(); for (N n : v) m.addNetwork(n); },
+                        m -> { m.awaitSimulation();
+                            @SuppressWarnings("unchecked")
+                            N[] array = (N[]) m.networks.toArray(new BlockNetwork[0]);
                             return array; }
                 ).add()
                 .build();
@@ -0,0 +1,69 @@
+package com.karolex.hydrodynamics.blocknetwork;
+
+import com.hypixel.hytale.math.vector.Vector3i;
+import com.karolex.hydrodynamics.util.BlockUtil;
+import com.karolex.hydrodynamics.util.LongIntMap;
+
+import java.util.List;
+
+/**
+ * Immutable copy of the per-node values of a {@link BlockNetwork}, republished after every tick.
+ * Readers on any thread can hold on to a snapshot and query it without locking; the values are
+ * whatever {@link BlockNetworkState#snapshot} publishes, one array per channel.
+ */
+public final class BlockNetworkSnapshot {
+
+    public static final BlockNetworkSnapshot EMPTY = new BlockNetworkSnapshot(0, new LongIntMap(), new double[0][]);
+
+    private final long version;
+    private final LongIntMap positions;
+    private final double[][] values;
+
+    BlockNetworkSnapshot(long version, LongIntMap positions, double[][] values) {
+        this.version = version;
+        this.positions = positions;
+        this.values = values;
+    }
+
+    /**
+     * Node index by packed block position, shared by all snapshots until the topology changes.
+     */
+    static <C extends BlockNetworkComponent<C>> LongIntMap indexPositions(List<BlockNetwork<C>.Node> nodes) {
+        int blocks = 0;
+        for (BlockNetwork<C>.Node node : nodes) blocks += node.blocks.size();
+        LongIntMap positions = new LongIntMap(blocks);
+        for (int i = 0; i < nodes.size(); i++) {
+            final int index = i;
+            nodes.get(i).blocks.forEach(b -> positions.put(b, index));
+        }
+        return positions;
+    }
+
+    /** Increases with every snapshot published by the same network. */
+    public long version() {
+        return version;
+    }
+
+    public int nodeCount() {
+        return values.length == 0 ? 0 : values[0].length;
+    }
+
+    /**
+     * @return the node index of the block at {@code pos}, or -1 if it is not part of this snapshot
+     */
+    public int indexOf(Vector3i pos) {
+        return positions.get(BlockUtil.pack(pos));
+    }
+
+    public double get(int channel, int node) {
+        return values[channel][node];
+    }
+
+    /**
+     * @return the value of the block at {@code pos}, or {@link Double#NaN} if it is not part of this snapshot
+     */
+    public double get(int channel, Vector3i pos) {
+        int node = indexOf(pos);
+        return node < 0 ? Double.NaN : values[channel][node];
+    }
+}
@@ -0,0 +1,86 @@
+package com.karolex.hydrodynamics.blocknetwork;
+
+/**
+ * Dense per-index component state of a compiled {@link BlockNetwork}, which the tick runs on
+ * instead of the component objects. Nodes and edges are addressed by their index in the
+ * compiled network. The component objects stay the source of truth outside of ticks:
+ * {@link #load} and {@link #store} copy state between the two.
+ *
+ * @param <C> component type
+ */
+public interface BlockNetworkState<C extends BlockNetworkComponent<C>> {
+
+    /** Prepares room for the given number of nodes and edges, discarding the current state. */
+    void resize(int nodeCount, int edgeCount);
+
+    /**
+     * Called after {@link #resize} with the topology of the compiled network, see {@link CompiledNetwork}.
+     * The arrays must not be modified.
+     */
+    default void topology(int[] edgeFrom, int[] edgeTo, int[] nodeEdgeOffsets, int[] nodeEdges) {}
+
+    void load(int node, C storage);
+
+    void store(int node, C storage);
+
+    /** @param fromType {@link ConnectionTypes} id of the port at the {@code from} end */
+    void loadEdge(int edge, C flux, int fromType, int toType);
+
+    /** Writes the flux of {@code edge} back and returns the up-to-date flux object. */
+    C storeEdge(int edge, C flux);
+
+    void computeFlux(int edge, int from, int to);
+
+    /** Called before the fluxes of a node are applied, e.g. to remember its previous state. */
+    void beginUpdate(int node);
+
+    void applyFlux(int node, int edge, boolean outgoing);
+
+    void tick(int node, float dt);
+
+    /** Nanoseconds until the next update of {@code node}, or {@link BlockNetworkComponent#SLEEP}. */
+    long computeDelay(int node, float dt);
+
+    /**
+     * Whether the last update of {@code node} changed its state. Fluxes of edges between unchanged
+     * nodes are not recomputed, and unchanged nodes do not wake their neighbours.
+     */
+    default boolean changed(int node) {
+        return true;
+    }
+
+    /**
+     * Moves the region around {@code node} straight to its steady state, for layouts that know it in
+     * closed form. The region must not exchange anything with the rest of the network, so that its
+     * nodes can sleep until they are woken from the outside.
+     *
+     * @param settled receives the indices of the nodes whose updates are no longer needed
+     * @return the number of indices written to {@code settled}, or 0 to update {@code node} as usual
+     */
+    default int settle(int node, int[] settled) {
+        return 0;
+    }
+
+    /**
+     * Whether the layout advances all nodes together in {@link #step}, e.g. with an implicit solver,
+     * instead of being updated node by node.
+     */
+    default boolean stepsGlobally() {
+        return false;
+    }
+
+    /**
+     * Advances every node by {@code dt} seconds. The tick only calls it if {@link #stepsGlobally()}.
+     *
+     * @return nanoseconds until the next step, or {@link BlockNetworkComponent#SLEEP}
+     */
+    long step(float dt);
+
+    /** Number of values per node published in {@link BlockNetworkSnapshot}s, 0 to publish none. */
+    default int snapshotChannels() {
+        return 0;
+    }
+
+    /** Copies the published values of nodes {@code 0 .. nodeCount - 1}, into one array per channel. */
+    default void snapshot(double[][] into, int nodeCount) {}
+}
@@ -0,0 +1,13 @@
+package com.karolex.hydrodynamics.blocknetwork;
+
+import com.hypixel.hytale.math.vector.Vector3i;
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
+import com.hypixel.hytale.server.core.universe.world.chunk.WorldChunk;
+
+/**
+ * A block placement for {@link BlockNetworkManager#onBlocksPlaced}, with the same arguments as
+ * {@link BlockNetworkManager#onBlockPlaced}.
+ */
+public record BlockPlacement<C extends BlockNetworkComponent<C>>(
+        Vector3i origin, WorldChunk chunk, C storage, BlockType blockType) {
+}
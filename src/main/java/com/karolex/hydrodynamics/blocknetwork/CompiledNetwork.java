@@ -0,0 +1,110 @@
+package com.karolex.hydrodynamics.blocknetwork;
+
+import com.hypixel.hytale.math.vector.Vector3i;
+import com.karolex.hydrodynamics.util.LongIntMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Index-based form of a {@link BlockNetwork} that the tick runs on.
+ * <p>
+ * Nodes and edges are numbered densely; the edges of node {@code i} are
+ * {@code nodeEdges[nodeEdgeOffsets[i]] .. nodeEdges[nodeEdgeOffsets[i + 1] - 1]}, and the
+ * endpoints of edge {@code e} are {@code edgeFrom[e]} and {@code edgeTo[e]} ({@code -1} if
+ * unresolved). Component state is held by {@link #state}. The Node and Edge objects stay the
+ * source of truth for topology edits, after which the compiled form is rebuilt.
+ * <p>
+ * Every change of a node's state bumps its version. An edge remembers the versions of its ends it
+ * was computed at, so its flux is only recomputed once one of them changed.
+ */
+final class CompiledNetwork<C extends BlockNetworkComponent<C>> {
+
+    final List<BlockNetwork<C>.Node> nodes;
+    final List<BlockNetwork<C>.Edge> edges = new ArrayList<>();
+    final int[] edgeFrom;
+    final int[] edgeTo;
+    final int[] nodeEdgeOffsets;
+    final int[] nodeEdges;
+    final BlockNetworkState<C> state;
+    final int[] settled;   // scratch for BlockNetworkState.settle
+    final int[] nodeVersion;
+    final int[] edgeFromVersion;
+    final int[] edgeToVersion;
+    final long[] edgeUpdatedAt;   // tick the edge was last visited in
+    final long[] edgeComputedAt;  // tick the flux was last computed in
+    LongIntMap positions;  // for snapshots, built on first use
+
+    CompiledNetwork(Collection<BlockNetwork<C>.Node> nodeSet,
+                    Function<Vector3i, BlockNetwork<C>.Node> nodeAt,
+                    BlockNetworkState<C> state) {
+        this.nodes = new ArrayList<>(nodeSet);
+        this.state = state;
+
+        int adjacency = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            BlockNetwork<C>.Node node = nodes.get(i);
+            node.index = i;
+            for (BlockNetwork<C>.Edge edge : node.connectedEdges) edge.index = -1;
+            adjacency += node.connectedEdges.size();
+        }
+
+        nodeEdgeOffsets = new int[nodes.size() + 1];
+        nodeEdges = new int[adjacency];
+        int k = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeEdgeOffsets[i] = k;
+            for (BlockNetwork<C>.Edge edge : nodes.get(i).connectedEdges) {
+                if (edge.index < 0) {
+                    edge.index = edges.size();
+                    edges.add(edge);
+                }
+                nodeEdges[k++] = edge.index;
+            }
+        }
+        nodeEdgeOffsets[nodes.size()] = k;
+
+        edgeFrom = new int[edges.size()];
+        edgeTo = new int[edges.size()];
+        for (int e = 0; e < edges.size(); e++) {
+            BlockNetwork<C>.Edge edge = edges.get(e);
+            edgeFrom[e] = indexOf(nodeAt.apply(edge.from));
+            edgeTo[e] = indexOf(nodeAt.apply(edge.to));
+        }
+
+        settled = new int[nodes.size()];
+        nodeVersion = new int[nodes.size()];
+        edgeFromVersion = new int[edges.size()];
+        edgeToVersion = new int[edges.size()];
+        edgeUpdatedAt = new long[edges.size()];
+        edgeComputedAt = new long[edges.size()];
+        Arrays.fill(edgeFromVersion, -1);  // nothing computed yet
+        state.resize(nodes.size(), edges.size());
+        state.topology(edgeFrom, edgeTo, nodeEdgeOffsets, nodeEdges);
+        for (int i = 0; i < nodes.size(); i++) state.load(i, nodes.get(i).storage);
+        for (int e = 0; e < edges.size(); e++) {
+            BlockNetwork<C>.Edge edge = edges.get(e);
+            state.loadEdge(e, edge.flux, edge.fromTypeId, edge.toTypeId);
+        }
+    }
+
+    boolean contains(BlockNetwork<C>.Node node) {
+        return node.index >= 0 && node.index < nodes.size() && nodes.get(node.index) == node;
+    }
+
+    private int indexOf(BlockNetwork<C>.Node node) {
+        return node != null && contains(node) ? node.index : -1;
+    }
+
+    /** Writes the compiled state back into the component objects. */
+    void store() {
+        for (int i = 0; i < nodes.size(); i++) state.store(i, nodes.get(i).storage);
+        for (int e = 0; e < edges.size(); e++) {
+            BlockNetwork<C>.Edge edge = edges.get(e);
+            edge.flux = state.storeEdge(e, edge.flux);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.karolex.hydrodynamics.blocknetwork;
+
+/**
+ * Table of kernels indexed by the {@link ConnectionTypes} ids of both ends of an edge,
+ * falling back to a default kernel for unregistered pairs.
+ *
+ * @param <K> kernel type
+ */
+public final class ConnectionKernelTable<K> {
+
+    private final K fallback;
+    private volatile Object[][] table = new Object[0][0];
+
+    public ConnectionKernelTable(K fallback) {
+        this.fallback = fallback;
+    }
+
+    /** Registers {@code kernel} for edges from a {@code fromType} port to a {@code toType} port. */
+    public synchronized void register(String fromType, String toType, K kernel) {
+        int from = ConnectionTypes.of(fromType);
+        int to = ConnectionTypes.of(toType);
+        int size = Math.max(table.length, Math.max(from, to) + 1);
+        Object[][] grown = new Object[size][size];
+        for (int i = 0; i < table.length; i++) System.arraycopy(table[i], 0, grown[i], 0, table[i].length);
+        grown[from][to] = kernel;
+        table = grown;
+    }
+
+    /** Whether a kernel other than the fallback is registered for the pair. */
+    public boolean isRegistered(int fromType, int toType) {
+        Object[][] t = table;
+        return fromType < t.length && toType < t.length && t[fromType][toType] != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public K get(int fromType, int toType) {
+        Object[][] t = table;
+        if (fromType >= t.length || toType >= t.length) return fallback;
+        Object kernel = t[fromType][toType];
+        return kernel != null ? (K) kernel : fallback;
+    }
+}
@@ -0,0 +1,44 @@
+package com.karolex.hydrodynamics.blocknetwork;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry interning connection type names such as {@code "Inlet"} into small ordinal ids,
+ * so that the tick can dispatch on them without string handling. Ids are assigned on first
+ * use and stay stable for the lifetime of the server.
+ */
+public final class ConnectionTypes {
+
+    private static final Map<String, Integer> IDS = new HashMap<>();
+    // Copied on registration, so that names can be read without locking.
+    private static volatile String[] names = new String[0];
+
+    public static final int DEFAULT = of(BlockNetwork.DEFAULT_CONNECTION_TYPE);
+
+    private ConnectionTypes() { /* Utility Class */ }
+
+    /**
+     * Id of the connection type {@code name}, registering it if needed. {@code null}, the type of
+     * faces without a declared connection point, is a type of its own.
+     */
+    public static synchronized int of(String name) {
+        Integer id = IDS.get(name);
+        if (id != null) return id;
+        int next = names.length;
+        String[] grown = Arrays.copyOf(names, next + 1);
+        grown[next] = name;
+        names = grown;
+        IDS.put(name, next);
+        return next;
+    }
+
+    public static String name(int id) {
+        return names[id];
+    }
+
+    public static int count() {
+        return names.length;
+    }
+}
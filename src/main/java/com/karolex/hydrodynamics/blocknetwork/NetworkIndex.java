@@ -0,0 +1,86 @@
+package com.karolex.hydrodynamics.blocknetwork;
+
+import com.hypixel.hytale.math.util.ChunkUtil;
+import com.karolex.hydrodynamics.util.BlockUtil;
+import com.karolex.hydrodynamics.util.LongHashSet;
+import com.karolex.hydrodynamics.util.LongObjectMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Owning network by packed block position, shared by all networks of a manager and only written
+ * on its tick thread. Readers on other threads go through a copy split up by chunk, in which
+ * {@link #publish()} replaces only the chunks whose blocks changed owner.
+ */
+final class NetworkIndex<C extends BlockNetworkComponent<C>> {
+
+    private final LongObjectMap<BlockNetwork<C>> owners = new LongObjectMap<>();
+    // Positions whose owner changed since the last publish().
+    private LongHashSet changed = new LongHashSet();
+    // Immutable owner maps by chunk index, replaced as a whole.
+    private final Map<Long, LongObjectMap<BlockNetwork<C>>> readable = new ConcurrentHashMap<>();
+
+    BlockNetwork<C> get(long pos) {
+        return owners.get(pos);
+    }
+
+    boolean containsKey(long pos) {
+        return owners.containsKey(pos);
+    }
+
+    void put(long pos, BlockNetwork<C> network) {
+        if (owners.put(pos, network) != network) changed.add(pos);
+    }
+
+    void remove(long pos) {
+        if (owners.remove(pos) != null) changed.add(pos);
+    }
+
+    void clear() {
+        owners.clear();
+        changed = new LongHashSet();
+        readable.clear();
+    }
+
+    boolean isPublished() {
+        return changed.isEmpty();
+    }
+
+    /**
+     * Makes the changes since the last call visible to {@link #readableAt}. Costs the size of the
+     * chunks that changed, not of the whole index.
+     */
+    void publish() {
+        if (changed.isEmpty()) return;
+        Map<Long, LongObjectMap<BlockNetwork<C>>> copies = new HashMap<>();
+        changed.forEach(pos -> {
+            long chunk = chunkIndex(pos);
+            LongObjectMap<BlockNetwork<C>> copy = copies.computeIfAbsent(chunk, k -> {
+                LongObjectMap<BlockNetwork<C>> current = readable.get(k);
+                return current == null ? new LongObjectMap<>() : new LongObjectMap<>(current);
+            });
+            BlockNetwork<C> owner = owners.get(pos);
+            if (owner != null) copy.put(pos, owner);
+            else copy.remove(pos);
+        });
+        for (Map.Entry<Long, LongObjectMap<BlockNetwork<C>>> entry : copies.entrySet()) {
+            if (entry.getValue().isEmpty()) readable.remove(entry.getKey());
+            else readable.put(entry.getKey(), entry.getValue());
+        }
+        changed = new LongHashSet();
+    }
+
+    /**
+     * Owner of {@code pos} as of the last {@link #publish()}. Safe to call from any thread.
+     */
+    BlockNetwork<C> readableAt(long pos) {
+        LongObjectMap<BlockNetwork<C>> chunk = readable.get(chunkIndex(pos));
+        return chunk == null ? null : chunk.get(pos);
+    }
+
+    private static long chunkIndex(long pos) {
+        return ChunkUtil.indexChunkFromBlock(BlockUtil.unpackX(pos), BlockUtil.unpackZ(pos));
+    }
+}
@@ -0,0 +1,113 @@
+package com.karolex.hydrodynamics.blocknetwork;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link BlockNetworkState} that keeps references to the component objects and delegates
+ * to their methods. Used by networks without a dedicated state layout.
+ */
+class ObjectNetworkState<C extends BlockNetworkComponent<C>> implements BlockNetworkState<C> {
+
+    private final List<C> storages = new ArrayList<>();
+    private final List<C> fluxes = new ArrayList<>();
+    private int[] fromTypes = new int[0];
+    private int[] toTypes = new int[0];
+    private double previousMetric;
+    private int[] edgeFrom = new int[0];
+    private int[] edgeTo = new int[0];
+    private int[] nodeEdgeOffsets = {0};
+    private int[] nodeEdges = new int[0];
+
+    @Override
+    public void resize(int nodeCount, int edgeCount) {
+        storages.clear();
+        storages.addAll(Collections.nCopies(nodeCount, null));
+        fluxes.clear();
+        fluxes.addAll(Collections.nCopies(edgeCount, null));
+        if (fromTypes.length < edgeCount) {
+            fromTypes = new int[edgeCount];
+            toTypes = new int[edgeCount];
+        }
+    }
+
+    @Override
+    public void topology(int[] edgeFrom, int[] edgeTo, int[] nodeEdgeOffsets, int[] nodeEdges) {
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.nodeEdgeOffsets = nodeEdgeOffsets;
+        this.nodeEdges = nodeEdges;
+    }
+
+    @Override
+    public void load(int node, C storage) {
+        storages.set(node, storage);
+    }
+
+    @Override
+    public void store(int node, C storage) {
+        // State lives in the component objects themselves.
+    }
+
+    @Override
+    public void loadEdge(int edge, C flux, int fromType, int toType) {
+        fluxes.set(edge, flux);
+        fromTypes[edge] = fromType;
+        toTypes[edge] = toType;
+    }
+
+    @Override
+    public C storeEdge(int edge, C flux) {
+        return fluxes.get(edge);
+    }
+
+    @Override
+    public void computeFlux(int edge, int from, int to) {
+        C flux = fluxes.get(edge);
+        fluxes.set(edge, flux.calculateFlux(storages.get(from), storages.get(to), fromTypes[edge], toTypes[edge], flux));
+    }
+
+    @Override
+    public void beginUpdate(int node) {
+        previousMetric = storages.get(node).delayMetric();
+    }
+
+    @Override
+    public void applyFlux(int node, int edge, boolean outgoing) {
+        if (outgoing) storages.get(node).del(fluxes.get(edge));
+        else storages.get(node).add(fluxes.get(edge));
+    }
+
+    @Override
+    public void tick(int node, float dt) {
+        storages.get(node).tick(dt);
+    }
+
+    @Override
+    public long computeDelay(int node, float dt) {
+        C storage = storages.get(node);
+        return storage.computeDelayNanos(dt, previousMetric, storage.isActive());
+    }
+
+    /**
+     * Runs the per-node update on every node at once: all fluxes first, then every node applies them.
+     */
+    @Override
+    public long step(float dt) {
+        for (int e = 0; e < edgeFrom.length; e++) {
+            if (edgeFrom[e] >= 0 && edgeTo[e] >= 0) computeFlux(e, edgeFrom[e], edgeTo[e]);
+        }
+        long delay = BlockNetworkComponent.SLEEP;
+        for (int i = 0; i < storages.size(); i++) {
+            beginUpdate(i);
+            for (int k = nodeEdgeOffsets[i]; k < nodeEdgeOffsets[i + 1]; k++) {
+                int e = nodeEdges[k];
+                applyFlux(i, e, edgeFrom[e] == i);
+            }
+            tick(i, dt);
+            delay = Math.min(delay, computeDelay(i, dt));
+        }
+        return delay;
+    }
+}
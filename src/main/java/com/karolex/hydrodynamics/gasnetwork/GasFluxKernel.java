@@ -0,0 +1,12 @@
+package com.karolex.hydrodynamics.gasnetwork;
+
+/**
+ * Computes the amount of gas moved across an edge by one update, positive from {@code from}
+ * to {@code to}. Registered per pair of connection types in {@link GasNetworkComponent#FLUX_KERNELS}.
+ */
+@FunctionalInterface
+public interface GasFluxKernel {
+
+    double flux(double fromAmount, double fromVolume, double fromTarget,
+                double toAmount, double toVolume, double toTarget);
+}
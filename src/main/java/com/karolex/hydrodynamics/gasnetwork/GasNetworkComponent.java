@@ -3,6 +3,9 @@ package com.karolex.hydrodynamics.gasnetwork;
 import com.karolex.hydrodynamics.HydrodynamicsPlugin;
 import com.karolex.hydrodynamics.blocknetwork.BlockNetwork;
 import com.karolex.hydrodynamics.blocknetwork.BlockNetworkComponent;
+import com.karolex.hydrodynamics.blocknetwork.ConnectionKernelTable;
+import com.karolex.hydrodynamics.blocknetwork.ConnectionTypes;
+import com.karolex.hydrodynamics.util.PortLayout;
 import com.hypixel.hytale.codec.Codec;
 import com.hypixel.hytale.codec.KeyedCodec;
 import com.hypixel.hytale.codec.builder.BuilderCodec;
@@ -14,7 +17,6 @@ import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.universe.world.storage.ChunkStore;
 import org.jspecify.annotations.Nullable;
 
-import java.time.Duration;
 import java.util.Map;
 
 public class GasNetworkComponent implements BlockNetworkComponent<GasNetworkComponent>, Component<ChunkStore> {
@@ -23,6 +25,37 @@ public class GasNetworkComponent implements BlockNetworkComponent<GasNetworkComp
     public static final double TEMPERATURE = 293.0;  // K, fix
     public static final double MIN_AMOUNT  = 1e-10;
     public static final long   TICK_MS     = 50L;
+    public static final double SETTLED_PRESSURE_DELTA = 0.01;  // Pa
+    public static final double BACKOFF_PRESSURE_DELTA = 1.0;   // Pa, below this updates back off exponentially
+
+    private static final long TICK_NANOS = TICK_MS * 1_000_000L;
+    private static final float TICK_SECONDS = TICK_MS * 1e-3f;
+    private static final long MAX_DELAY_NANOS = 32 * TICK_NANOS;
+    // Longer gaps, e.g. after a server hitch, are only simulated up to this many ticks
+    static final int MAX_SUBSTEPS = 32;
+
+    // Share of the distance to its equilibrium an edge removes per update
+    private static final double TRANSFER_RATIO = 0.6;
+
+    public static final String INLET  = "Inlet";
+    public static final String OUTLET = "Outlet";
+
+    /**
+     * Flux kernels by connection types of the edge ends. Plain pipe-to-pipe edges equalize pressure;
+     * mods can register kernels for their own port types.
+     */
+    public static final ConnectionKernelTable<GasFluxKernel> FLUX_KERNELS =
+            new ConnectionKernelTable<>(GasNetworkComponent::equalizingFlux);
+
+    static {
+        String plain = BlockNetwork.DEFAULT_CONNECTION_TYPE;
+        FLUX_KERNELS.register(INLET, OUTLET, (fa, fv, ft, ta, tv, tt) -> pumpPairFlux(-1, fa, fv, ft, ta, tv, tt));
+        FLUX_KERNELS.register(OUTLET, INLET, (fa, fv, ft, ta, tv, tt) -> pumpPairFlux( 1, fa, fv, ft, ta, tv, tt));
+        FLUX_KERNELS.register(INLET,  plain, (fa, fv, ft, ta, tv, tt) -> pumpPortFlux( 1, true,  fa, fv, ft, ta, tv, tt));
+        FLUX_KERNELS.register(plain,  INLET, (fa, fv, ft, ta, tv, tt) -> pumpPortFlux( 1, false, fa, fv, ft, ta, tv, tt));
+        FLUX_KERNELS.register(OUTLET, plain, (fa, fv, ft, ta, tv, tt) -> pumpPortFlux(-1, true,  fa, fv, ft, ta, tv, tt));
+        FLUX_KERNELS.register(plain, OUTLET, (fa, fv, ft, ta, tv, tt) -> pumpPortFlux(-1, false, fa, fv, ft, ta, tv, tt));
+    }
 
     public static final BuilderCodec<GasNetworkComponent> CODEC;
 
@@ -70,6 +103,10 @@ public class GasNetworkComponent implements BlockNetworkComponent<GasNetworkComp
     }
 
     public double pressure() {
+        return pressure(amount, volume);
+    }
+
+    static double pressure(double amount, double volume) {
         if (volume <= 0) return 0.0;
         return amount * R * TEMPERATURE / volume;
     }
@@ -99,100 +136,116 @@ public class GasNetworkComponent implements BlockNetworkComponent<GasNetworkComp
 
     @Override
     public GasNetworkComponent calculateFlux(GasNetworkComponent from, GasNetworkComponent to,
-                                             String fromType, String toType) {
-        GasNetworkComponent flux = zero();
-        if (from.isClosed || to.isClosed) return flux;
-        if (from.volume <= 0 || to.volume <= 0) return flux;
-
-        return switch (fromType + ":" + toType) {
-            case "Inlet:Outlet" -> {
-                // from-Inlet + to-Outlet: beide pumpen gas to→from
-                // Ziel: p_to - p_from = (from.targetPressure + to.targetPressure) / 2
-                double dPTotal = (from.targetPressure + to.targetPressure) / 2.0;
-                double invFrom = 1.0 / from.volume;
-                double invTo   = 1.0 / to.volume;
-                double eqFrom  = ((from.amount + to.amount) / to.volume - dPTotal / (R * TEMPERATURE))
-                        / (invFrom + invTo);
-                double delta   = (from.amount - eqFrom) * 0.6;
-                double lo = -(to.amount   - MIN_AMOUNT);
-                double hi =  (from.amount - MIN_AMOUNT);
-                if (lo > hi) yield flux;
-                flux.amount = Math.clamp(delta, lo, hi);
-                yield flux;
-            }
-            case "Outlet:Inlet" -> {
-                // from-Outlet + to-Inlet: beide pumpen gas from→to
-                // Ziel: p_from - p_to = (from.targetPressure + to.targetPressure) / 2
-                double dPTotal = (from.targetPressure + to.targetPressure) / 2.0;
-                double invFrom = 1.0 / from.volume;
-                double invTo   = 1.0 / to.volume;
-                double eqFrom  = ((from.amount + to.amount) / to.volume + dPTotal / (R * TEMPERATURE))
-                        / (invFrom + invTo);
-                double delta   = (from.amount - eqFrom) * 0.6;
-                double lo = -(to.amount   - MIN_AMOUNT);
-                double hi =  (from.amount - MIN_AMOUNT);
-                if (lo > hi) yield flux;
-                flux.amount = Math.clamp(delta, lo, hi);
-                yield flux;
-            }
-            case "Inlet:Default", "Default:Inlet" -> {
-                boolean pumpIsFrom = "Inlet".equals(fromType);
-                GasNetworkComponent pump     = pumpIsFrom ? from : to;
-                GasNetworkComponent neighbor = pumpIsFrom ? to   : from;
-
-                // Target: p_neighbor - p_pump = dPTarget
-                // => eqNeighbor = (totalAmount/pump.volume + dPTarget/(R*T)) / (1/neighbor.volume + 1/pump.volume)
-                double dPTarget   = pump.targetPressure / 2.0;
-                double invPump    = 1.0 / pump.volume;
-                double invNeighbor= 1.0 / neighbor.volume;
-                double eqNeighbor = (((pump.amount + neighbor.amount) * invPump) + dPTarget / (R * TEMPERATURE))
-                        / (invNeighbor + invPump);
-
-                double delta = (neighbor.amount - eqNeighbor) * 0.6; // positive = neighbor→pump
-
-                double lo = -(pump.amount     - MIN_AMOUNT);
-                double hi =  (neighbor.amount - MIN_AMOUNT);
-                if (lo > hi) yield flux;
-
-                flux.amount = pumpIsFrom ? -Math.clamp(delta, lo, hi) : Math.clamp(delta, lo, hi);
-                yield flux;
-            }
-            case "Outlet:Default", "Default:Outlet" -> {
-                boolean pumpIsFrom = "Outlet".equals(fromType);
-                GasNetworkComponent pump     = pumpIsFrom ? from : to;
-                GasNetworkComponent neighbor = pumpIsFrom ? to   : from;
-
-                // Target: p_pump - p_neighbor = dPTarget
-                // => eqNeighbor = (totalAmount/pump.volume - dPTarget/(R*T)) / (1/neighbor.volume + 1/pump.volume)
-                double dPTarget   = pump.targetPressure / 2.0;
-                double invPump    = 1.0 / pump.volume;
-                double invNeighbor= 1.0 / neighbor.volume;
-                double eqNeighbor = (((pump.amount + neighbor.amount) * invPump) - dPTarget / (R * TEMPERATURE))
-                        / (invNeighbor + invPump);
-
-                double delta = (neighbor.amount - eqNeighbor) * 0.6; // positive = backflow neighbor→pump
-
-                double lo = -(pump.amount     - MIN_AMOUNT);
-                double hi =  (neighbor.amount - MIN_AMOUNT);
-                if (lo > hi) yield flux;
-
-                flux.amount = pumpIsFrom ? -Math.clamp(delta, lo, hi) : Math.clamp(delta, lo, hi);
-                yield flux;
-            }
-            default -> {
-                double totalAmount    = from.amount + to.amount;
-                double totalVolume    = from.volume + to.volume;
-                double eqAmountFrom   = totalAmount * (from.volume / totalVolume);
-                double transfer_ratio = 0.6;
-                double delta          = (from.amount - eqAmountFrom) * transfer_ratio;
-                double lowerBound     = -(to.amount   - MIN_AMOUNT) * transfer_ratio;
-                double upperBound     =  (from.amount - MIN_AMOUNT) * transfer_ratio;
-
-                if (upperBound < lowerBound) yield flux;
-                flux.amount = Math.clamp(delta, lowerBound, upperBound);
-                yield flux;
-            }
-        };
+                                             String fromType, String toType, GasNetworkComponent into) {
+        return calculateFlux(from, to, ConnectionTypes.of(fromType), ConnectionTypes.of(toType), into);
+    }
+
+    @Override
+    public GasNetworkComponent calculateFlux(GasNetworkComponent from, GasNetworkComponent to,
+                                             int fromType, int toType, GasNetworkComponent into) {
+        into.amount = from.isClosed || to.isClosed ? 0.0 : fluxAmount(from.amount, from.volume, from.targetPressure,
+                to.amount, to.volume, to.targetPressure, fromType, toType);
+        return into;
+    }
+
+    /**
+     * Amount of gas moved from {@code from} to {@code to} by one update of an open edge.
+     */
+    static double fluxAmount(double fromAmount, double fromVolume, double fromTarget,
+                             double toAmount, double toVolume, double toTarget,
+                             int fromType, int toType) {
+        if (fromVolume <= 0 || toVolume <= 0) return 0.0;
+        return FLUX_KERNELS.get(fromType, toType)
+                .flux(fromAmount, fromVolume, fromTarget, toAmount, toVolume, toTarget);
+    }
+
+    /**
+     * Amount per second and Pa that an equalizing edge moves, for the implicit solver. Matches
+     * {@link #equalizingFlux} updated once per tick.
+     */
+    static double conductance(double fromVolume, double toVolume) {
+        if (fromVolume <= 0 || toVolume <= 0) return 0.0;
+        double reducedVolume = fromVolume * toVolume / (fromVolume + toVolume);
+        return TRANSFER_RATIO / (TICK_MS * 1e-3) * reducedVolume / (R * TEMPERATURE);
+    }
+
+    /**
+     * Share of the flux of one update that a non-equalizing edge moves in {@code dt} seconds, for the
+     * implicit solver. Scales with the step like {@link #conductance}, but never past the equilibrium
+     * the kernel aims for.
+     */
+    static double fluxScale(float dt) {
+        return Math.min(dt / TICK_SECONDS, 1.0 / TRANSFER_RATIO);
+    }
+
+    /**
+     * Whether edges between the given port types only equalize pressure, so that a region connected by
+     * them settles at equal pressure on its own.
+     */
+    static boolean isEqualizing(int fromType, int toType) {
+        return !FLUX_KERNELS.isRegistered(fromType, toType);
+    }
+
+    private static double equalizingFlux(double fromAmount, double fromVolume, double fromTarget,
+                                         double toAmount, double toVolume, double toTarget) {
+        double totalAmount    = fromAmount + toAmount;
+        double totalVolume    = fromVolume + toVolume;
+        double eqAmountFrom   = totalAmount * (fromVolume / totalVolume);
+        double delta          = (fromAmount - eqAmountFrom) * TRANSFER_RATIO;
+        double lowerBound     = -(toAmount   - MIN_AMOUNT) * TRANSFER_RATIO;
+        double upperBound     =  (fromAmount - MIN_AMOUNT) * TRANSFER_RATIO;
+
+        if (upperBound < lowerBound) return 0.0;
+        return Math.clamp(delta, lowerBound, upperBound);
+    }
+
+    /**
+     * Two facing pump ports. {@code sign} is +1 if both pump gas from→to (Outlet:Inlet),
+     * -1 if both pump gas to→from (Inlet:Outlet).
+     */
+    private static double pumpPairFlux(double sign, double fromAmount, double fromVolume, double fromTarget,
+                                       double toAmount, double toVolume, double toTarget) {
+        // Ziel: p_from - p_to = sign * (from.targetPressure + to.targetPressure) / 2
+        double dPTotal = (fromTarget + toTarget) / 2.0;
+        double invFrom = 1.0 / fromVolume;
+        double invTo   = 1.0 / toVolume;
+        double eqFrom  = ((fromAmount + toAmount) / toVolume + sign * dPTotal / (R * TEMPERATURE))
+                / (invFrom + invTo);
+        double delta   = (fromAmount - eqFrom) * TRANSFER_RATIO;
+        double lo = -(toAmount   - MIN_AMOUNT);
+        double hi =  (fromAmount - MIN_AMOUNT);
+        if (lo > hi) return 0.0;
+        return Math.clamp(delta, lo, hi);
+    }
+
+    /**
+     * A pump port facing a plain connection. {@code sign} is +1 for an Inlet, which keeps the
+     * neighbour {@code pumpTarget / 2} above the pump, and -1 for an Outlet, which keeps it below.
+     */
+    private static double pumpPortFlux(double sign, boolean pumpIsFrom,
+                                       double fromAmount, double fromVolume, double fromTarget,
+                                       double toAmount, double toVolume, double toTarget) {
+        double pumpAmount     = pumpIsFrom ? fromAmount : toAmount;
+        double pumpVolume     = pumpIsFrom ? fromVolume : toVolume;
+        double pumpTarget     = pumpIsFrom ? fromTarget : toTarget;
+        double neighborAmount = pumpIsFrom ? toAmount   : fromAmount;
+        double neighborVolume = pumpIsFrom ? toVolume   : fromVolume;
+
+        // Target: p_neighbor - p_pump = sign * dPTarget
+        // => eqNeighbor = (totalAmount/pump.volume + sign * dPTarget/(R*T)) / (1/neighbor.volume + 1/pump.volume)
+        double dPTarget   = pumpTarget / 2.0;
+        double invPump    = 1.0 / pumpVolume;
+        double invNeighbor= 1.0 / neighborVolume;
+        double eqNeighbor = (((pumpAmount + neighborAmount) * invPump) + sign * dPTarget / (R * TEMPERATURE))
+                / (invNeighbor + invPump);
+
+        double delta = (neighborAmount - eqNeighbor) * TRANSFER_RATIO; // positive = neighbor→pump
+
+        double lo = -(pumpAmount     - MIN_AMOUNT);
+        double hi =  (neighborAmount - MIN_AMOUNT);
+        if (lo > hi) return 0.0;
+
+        return pumpIsFrom ? -Math.clamp(delta, lo, hi) : Math.clamp(delta, lo, hi);
     }
 
     @Override
@@ -220,47 +273,126 @@ public class GasNetworkComponent implements BlockNetworkComponent<GasNetworkComp
 
     @Override
     public void tick(float dt) {
-        if (volume <= 0 || dt <= 0) return;
+        amount = tickAmount(type, amount, volume, targetPressure, maxRate, dt);
+    }
+
+    /**
+     * Amount after sources and sinks have worked towards their target pressure for {@code dt} seconds.
+     * Gaps longer than a tick are split into substeps of at most a tick, so that a late update catches
+     * up as if it had run on time.
+     */
+    static double tickAmount(GasNetworkType type, double amount, double volume,
+                             double targetPressure, double maxRate, float dt) {
+        if (volume <= 0 || dt <= 0 || !isActive(type)) return amount;
+        int substeps = substeps(dt, TICK_SECONDS);
+        float step = dt / substeps;
+        for (int k = 0; k < substeps; k++) amount = stepAmount(type, amount, volume, targetPressure, maxRate, step);
+        return amount;
+    }
+
+    /** Number of steps of at most {@code maxStep} seconds to cover {@code dt}, bounded by {@link #MAX_SUBSTEPS}. */
+    static int substeps(float dt, float maxStep) {
+        return (int) Math.clamp((long) Math.ceil(dt / maxStep), 1, MAX_SUBSTEPS);
+    }
+
+    private static double stepAmount(GasNetworkType type, double amount, double volume,
+                                     double targetPressure, double maxRate, float dt) {
         switch (type) {
             case SOURCE -> {
                 double target = targetPressure * volume / (R * TEMPERATURE);
                 double deficit = target - amount;
-                if (deficit <= 0) return;
-                amount += Math.min(deficit * 0.5, maxRate * dt);
+                if (deficit <= 0) return amount;
+                return amount + Math.min(deficit * 0.5, maxRate * dt);
             }
             case SINK -> {
                 double target = targetPressure * volume / (R * TEMPERATURE);
                 double surplus = amount - target;
-                if (surplus <= 0) return;
-                amount = Math.max(MIN_AMOUNT, amount - Math.min(surplus * 0.5, maxRate * dt));
+                if (surplus <= 0) return amount;
+                return Math.max(MIN_AMOUNT, amount - Math.min(surplus * 0.5, maxRate * dt));
+            }
+            default -> {
+                return amount;
             }
-            default -> {}
         }
     }
 
     @Override
-    public Duration computeDelay(float dt, GasNetworkComponent previous, boolean isActive) {
-        if (isActive) return Duration.ofMillis(TICK_MS);
-        double dP = Math.abs(pressure() - previous.pressure());
-        return dP < 0.01 ? null : Duration.ofMillis(TICK_MS);
+    public double delayMetric() {
+        return pressure();
+    }
+
+    @Override
+    public long computeDelayNanos(float dt, double previousPressure, boolean isActive) {
+        boolean working = isActive && isWorking(type, amount, volume, targetPressure);
+        return computeDelayNanos(working, Math.abs(pressure() - previousPressure), dt);
+    }
+
+    /**
+     * Delay after an update that changed the pressure by {@code pressureChange}, {@code dt} seconds after
+     * the previous one. Equalizing edges move a fixed share of the difference per update, whatever the
+     * delay, so nodes close to equilibrium can double their delay each update without overshooting.
+     * Sources and sinks that are still {@linkplain #isWorking working} are updated every tick.
+     */
+    static long computeDelayNanos(boolean working, double pressureChange, float dt) {
+        if (working) return TICK_NANOS;
+        if (pressureChange < SETTLED_PRESSURE_DELTA) return SLEEP;
+        if (pressureChange >= BACKOFF_PRESSURE_DELTA) return TICK_NANOS;
+        return Math.clamp(2 * (long) (dt * 1e9), TICK_NANOS, MAX_DELAY_NANOS);
     }
 
     @Override
     public boolean isActive() {
+        return isActive(type);
+    }
+
+    static boolean isActive(GasNetworkType type) {
         return type == GasNetworkType.SOURCE || type == GasNetworkType.SINK;
     }
 
+    /**
+     * Whether a source or sink has not reached its target pressure yet. Sources and sinks at their target
+     * sleep like passive nodes, until an update wave from a neighbour, a valve or a topology change wakes them.
+     */
+    static boolean isWorking(GasNetworkType type, double amount, double volume, double targetPressure) {
+        if (volume <= 0) return false;
+        double pressure = pressure(amount, volume);
+        return switch (type) {
+            case SOURCE -> pressure < targetPressure - SETTLED_PRESSURE_DELTA;
+            case SINK   -> pressure > targetPressure + SETTLED_PRESSURE_DELTA;
+            default     -> false;
+        };
+    }
+
+    /** Types that neither add, remove nor push gas. */
+    static boolean isPassive(GasNetworkType type) {
+        return !isActive(type) && type != GasNetworkType.PUMP;
+    }
+
+    private static final Map<Vector3i, String> VALVE_PORTS = Map.of(
+            new Vector3i(-1, 0, 0), BlockNetwork.DEFAULT_CONNECTION_TYPE,
+            new Vector3i( 1, 0, 0), BlockNetwork.DEFAULT_CONNECTION_TYPE
+    );
+    private static final Map<Vector3i, String> PUMP_PORTS = Map.of(
+            new Vector3i(-1, 0, 0), INLET,
+            new Vector3i( 1, 0, 0), OUTLET
+    );
+    private static final PortLayout VALVE_LAYOUT = PortLayout.of(VALVE_PORTS);
+    private static final PortLayout PUMP_LAYOUT  = PortLayout.of(PUMP_PORTS);
+
     @Override
     public Map<Vector3i, String> getConnectionPoints() {
         return switch (type) {
-            case VALVE -> Map.of(
-                    new Vector3i(-1, 0, 0), BlockNetwork.DEFAULT_CONNECTION_TYPE,
-                    new Vector3i( 1, 0, 0), BlockNetwork.DEFAULT_CONNECTION_TYPE
-            );
-            case PUMP -> Map.of(
-                    new Vector3i(-1, 0, 0), "Inlet",
-                    new Vector3i( 1, 0, 0), "Outlet"
-            );
+            case VALVE -> VALVE_PORTS;
+            case PUMP -> PUMP_PORTS;
+            default -> null;
+        };
+    }
+
+    @Override
+    public @Nullable PortLayout getPortLayout() {
+        return switch (type) {
+            case VALVE -> VALVE_LAYOUT;
+            case PUMP -> PUMP_LAYOUT;
             default -> null;
         };
     }
@@ -1,10 +1,13 @@
 package com.karolex.hydrodynamics.gasnetwork;
 
 import com.hypixel.hytale.math.vector.Vector3i;
-import com.hypixel.hytale.server.core.universe.Universe;
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
+import com.hypixel.hytale.server.core.universe.world.storage.ChunkStore;
 import com.karolex.hydrodynamics.HydrodynamicsPlugin;
 import com.karolex.hydrodynamics.blocknetwork.BlockNetwork;
 import com.karolex.hydrodynamics.blocknetwork.BlockNetworkManager;
+import com.karolex.hydrodynamics.blocknetwork.BlockNetworkSnapshot;
+import com.karolex.hydrodynamics.blocknetwork.BlockNetworkState;
 import com.hypixel.hytale.codec.builder.BuilderCodec;
 import com.hypixel.hytale.component.*;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
@@ -13,16 +16,59 @@ import org.jspecify.annotations.Nullable;
 public class GasNetworkResource extends BlockNetworkManager<GasNetworkComponent, GasNetworkResource.GasNetwork>
         implements Resource<EntityStore> {
 
+    /**
+     * Steps whole networks with an implicit pressure solver instead of relaxing them node by node,
+     * which spreads pressure changes through large networks within a few ticks.
+     */
+    public static final boolean IMPLICIT_SOLVER = Boolean.getBoolean("hydrodynamics.implicitSolver");
+
+    /** Channels of the {@link BlockNetworkSnapshot}s of gas networks. */
+    public static final int SNAPSHOT_AMOUNT = 0;
+    public static final int SNAPSHOT_PRESSURE = 1;
+    public static final int SNAPSHOT_VOLUME = 2;
+
+    /**
+     * Pressure at {@code pos} as of the last tick, {@link Double#NaN} if there is no gas block.
+     * Safe to call from any thread, see {@link #snapshotAt}.
+     */
+    public double readPressure(Vector3i pos) {
+        BlockNetworkSnapshot snapshot = snapshotAt(pos);
+        return snapshot == null ? Double.NaN : snapshot.get(SNAPSHOT_PRESSURE, pos);
+    }
+
+    /**
+     * Amount at {@code pos} as of the last tick, {@link Double#NaN} if there is no gas block.
+     * Safe to call from any thread, see {@link #snapshotAt}.
+     */
+    public double readAmount(Vector3i pos) {
+        BlockNetworkSnapshot snapshot = snapshotAt(pos);
+        return snapshot == null ? Double.NaN : snapshot.get(SNAPSHOT_AMOUNT, pos);
+    }
+
     public void onValveToggled(Vector3i pos) {
+        awaitSimulation();
         GasNetworkComponent comp = getComponent(pos);
         if (comp == null) return;
         comp.isClosed = !comp.isClosed;
         triggerUpdateWave(pos);
     }
 
+    @Override
+    protected void onBlockToggled(Vector3i pos) {
+        onValveToggled(pos);
+    }
+
+    @Override
+    protected @Nullable GasNetworkComponent createComponent(BlockType blockType) {
+        Holder<ChunkStore> blockEntity = blockType.getBlockEntity();
+        if (blockEntity == null) return null;
+        GasNetworkComponent component = blockEntity.getComponent(GasNetworkComponent.getComponentType());
+        return component == null ? null : component.copy();    // COPY is important!
+    }
+
     public static class GasNetwork extends BlockNetwork<GasNetworkComponent> {
         public GasNetwork() {
-            super(Universe.get().getDefaultWorld(), GasNetwork::new);
+            super(GasNetwork::new);
         }
 
         @Override
@@ -35,6 +81,11 @@ public class GasNetworkResource extends BlockNetworkManager<GasNetworkComponent,
         protected BuilderCodec<GasNetworkComponent> getComponentCodec() {
             return GasNetworkComponent.CODEC;
         }
+
+        @Override
+        protected BlockNetworkState<GasNetworkComponent> createState() {
+            return new GasNetworkState(IMPLICIT_SOLVER);
+        }
     }
 
     public static final BuilderCodec<GasNetworkResource> CODEC =
@@ -58,12 +109,13 @@ public class GasNetworkResource extends BlockNetworkManager<GasNetworkComponent,
 
     @Override
     public @Nullable Resource<EntityStore> clone() {
+        awaitSimulation();
         GasNetworkResource clone = new GasNetworkResource();
         for (GasNetwork network : networks) {
             GasNetwork clonedNetwork = new GasNetwork();
             clonedNetwork.deserializeNodes(network.serializeNodes());
             clonedNetwork.deserializeEdges(network.serializeEdges());
-            clone.networks.add(clonedNetwork);
+            clone.addNetwork(clonedNetwork);
         }
         return clone;
     }
@@ -0,0 +1,430 @@
+package com.karolex.hydrodynamics.gasnetwork;
+
+import com.karolex.hydrodynamics.blocknetwork.BlockNetworkComponent;
+import com.karolex.hydrodynamics.blocknetwork.BlockNetworkState;
+
+import java.util.Arrays;
+
+
+/**
+ * Struct-of-arrays layout of the {@link GasNetworkComponent}s of a network. Only amounts change
+ * while simulating, so only amounts are stored back into the components.
+ * <p>
+ * Regions of passive nodes joined by open, pressure-equalizing edges always relax to equal pressure
+ * with their total amount unchanged, so {@link #settle} sets them to that equilibrium in one pass
+ * instead of relaxing them tick by tick.
+ * <p>
+ * With the implicit solver, the whole network is stepped at once instead: sources, sinks and pumps
+ * act explicitly as boundary terms, then one backward Euler step of the pressure diffusion over the
+ * equalizing edges is solved with Jacobi-preconditioned conjugate gradients.
+ */
+class GasNetworkState implements BlockNetworkState<GasNetworkComponent> {
+
+    // Longest step of the implicit solver; longer gaps are split into substeps
+    private static final float MAX_STEP_SECONDS = 0.25f;
+    private static final double SOLVER_TOLERANCE = 1e-10;
+    private static final int MAX_SOLVER_ITERATIONS = 1000;
+
+    private final boolean implicit;
+    private boolean asleep;  // the last implicit step returned SLEEP
+
+    // Nodes
+    private double[] amount = new double[0];
+    private double[] volume = new double[0];
+    private double[] targetPressure = new double[0];
+    private double[] maxRate = new double[0];
+    private boolean[] closed = new boolean[0];
+    private GasNetworkType[] type = new GasNetworkType[0];
+
+    // Edges
+    private double[] flux = new double[0];
+    private int[] fromType = new int[0];
+    private int[] toType = new int[0];
+
+    private double previousPressure;
+    private double previousAmount;
+
+    // Topology and passive regions: the nodes of region r are regionNodes[regionStart[r] .. regionStart[r + 1] - 1].
+    // Regions are labelled lazily, after topology changes and loads that open or close valves.
+    private int[] edgeFrom = new int[0];
+    private int[] edgeTo = new int[0];
+    private int[] nodeEdgeOffsets = new int[1];
+    private int[] nodeEdges = new int[0];
+    private int nodeCount;
+    private int[] region = new int[0];  // -1 if the node is not in a passive region
+    private int[] regionNodes = new int[0];
+    private int[] regionStart = new int[1];
+    private boolean[] regionSettled = new boolean[0];
+    private boolean regionsValid;
+
+    // Implicit solver: capacity is amount per Pa, the system matrix is diagonal + off-diagonal conductances
+    private double[] capacity = new double[0];
+    private double[] diagonal = new double[0];
+    private double[] conductance = new double[0];
+    private double[] pressure = new double[0];
+    private double[] startPressure = new double[0];
+    private double[] residual = new double[0];
+    private double[] preconditioned = new double[0];
+    private double[] direction = new double[0];
+    private double[] product = new double[0];
+
+    GasNetworkState(boolean implicit) {
+        this.implicit = implicit;
+    }
+
+    @Override
+    public void resize(int nodeCount, int edgeCount) {
+        if (amount.length < nodeCount) {
+            amount         = new double[nodeCount];
+            volume         = new double[nodeCount];
+            targetPressure = new double[nodeCount];
+            maxRate        = new double[nodeCount];
+            closed         = new boolean[nodeCount];
+            type           = new GasNetworkType[nodeCount];
+        }
+        if (flux.length < edgeCount) {
+            flux     = new double[edgeCount];
+            fromType = new int[edgeCount];
+            toType   = new int[edgeCount];
+        }
+        this.nodeCount = nodeCount;
+        regionsValid = false;
+    }
+
+    @Override
+    public void topology(int[] edgeFrom, int[] edgeTo, int[] nodeEdgeOffsets, int[] nodeEdges) {
+        this.edgeFrom        = edgeFrom;
+        this.edgeTo          = edgeTo;
+        this.nodeEdgeOffsets = nodeEdgeOffsets;
+        this.nodeEdges       = nodeEdges;
+        regionsValid = false;
+    }
+
+    @Override
+    public void load(int node, GasNetworkComponent storage) {
+        // Regions only depend on which nodes are passive and which edges are open
+        boolean relabel = type[node] != storage.type || closed[node] != storage.isClosed
+                || (volume[node] > 0) != (storage.volume > 0);
+        amount[node]         = storage.amount;
+        volume[node]         = storage.volume;
+        targetPressure[node] = storage.targetPressure;
+        maxRate[node]        = storage.maxRate;
+        closed[node]         = storage.isClosed;
+        type[node]           = storage.type;
+        if (relabel) regionsValid = false;
+        else if (regionsValid && region[node] >= 0) regionSettled[region[node]] = false;
+    }
+
+    @Override
+    public void store(int node, GasNetworkComponent storage) {
+        storage.amount = amount[node];
+    }
+
+    @Override
+    public void loadEdge(int edge, GasNetworkComponent flux, int fromType, int toType) {
+        if (this.fromType[edge] != fromType || this.toType[edge] != toType) regionsValid = false;
+        this.flux[edge]     = flux.amount;
+        this.fromType[edge] = fromType;
+        this.toType[edge]   = toType;
+    }
+
+    @Override
+    public GasNetworkComponent storeEdge(int edge, GasNetworkComponent flux) {
+        flux.amount = this.flux[edge];
+        return flux;
+    }
+
+    @Override
+    public void computeFlux(int edge, int from, int to) {
+        if (closed[from] || closed[to]) {
+            flux[edge] = 0.0;
+            return;
+        }
+        flux[edge] = GasNetworkComponent.fluxAmount(
+                amount[from], volume[from], targetPressure[from],
+                amount[to], volume[to], targetPressure[to],
+                fromType[edge], toType[edge]);
+    }
+
+    @Override
+    public void beginUpdate(int node) {
+        previousPressure = GasNetworkComponent.pressure(amount[node], volume[node]);
+        previousAmount = amount[node];
+    }
+
+    @Override
+    public void applyFlux(int node, int edge, boolean outgoing) {
+        double delta = outgoing ? -flux[edge] : flux[edge];
+        amount[node] = Math.max(GasNetworkComponent.MIN_AMOUNT, amount[node] + delta);
+    }
+
+    @Override
+    public void tick(int node, float dt) {
+        amount[node] = GasNetworkComponent.tickAmount(type[node], amount[node], volume[node],
+                targetPressure[node], maxRate[node], dt);
+    }
+
+    @Override
+    public int settle(int node, int[] settled) {
+        if (!regionsValid) labelRegions();
+        int r = region[node];
+        if (r < 0) return 0;
+
+        // Nothing moves inside a settled region until it is relabelled or reloaded, so only the polled node is dropped
+        if (regionSettled[r]) {
+            settled[0] = node;
+            return 1;
+        }
+
+        int start = regionStart[r];
+        int end = regionStart[r + 1];
+        double totalAmount = 0.0;
+        double totalVolume = 0.0;
+        for (int k = start; k < end; k++) {
+            int i = regionNodes[k];
+            totalAmount += amount[i];
+            totalVolume += volume[i];
+        }
+        for (int k = start; k < end; k++) {
+            int i = regionNodes[k];
+            amount[i] = Math.max(GasNetworkComponent.MIN_AMOUNT, totalAmount * (volume[i] / totalVolume));
+            for (int j = nodeEdgeOffsets[i]; j < nodeEdgeOffsets[i + 1]; j++) flux[nodeEdges[j]] = 0.0;
+            settled[k - start] = i;
+        }
+        regionSettled[r] = true;
+        return end - start;
+    }
+
+    /**
+     * Labels the connected components over open edges and keeps those without active nodes or
+     * non-equalizing edges as passive regions.
+     */
+    private void labelRegions() {
+        if (region.length < nodeCount) {
+            region      = new int[nodeCount];
+            regionNodes = new int[nodeCount];
+        }
+        if (regionStart.length < nodeCount + 1) {
+            regionStart   = new int[nodeCount + 1];
+            regionSettled = new boolean[nodeCount];
+        }
+        Arrays.fill(region, 0, nodeCount, -2);
+
+        int regions = 0;
+        int end = 0;
+        for (int seed = 0; seed < nodeCount; seed++) {
+            if (region[seed] != -2) continue;
+            int start = end;
+            boolean passive = true;
+            region[seed] = regions;
+            regionNodes[end++] = seed;
+
+            // Breadth-first, using regionNodes as the queue
+            for (int q = start; q < end; q++) {
+                int i = regionNodes[q];
+                if (!GasNetworkComponent.isPassive(type[i])) passive = false;
+                for (int j = nodeEdgeOffsets[i]; j < nodeEdgeOffsets[i + 1]; j++) {
+                    int e = nodeEdges[j];
+                    if (!isOpen(e)) continue;
+                    if (!GasNetworkComponent.isEqualizing(fromType[e], toType[e])) passive = false;
+                    int other = edgeFrom[e] == i ? edgeTo[e] : edgeFrom[e];
+                    if (region[other] != -2) continue;
+                    region[other] = regions;
+                    regionNodes[end++] = other;
+                }
+            }
+
+            if (passive) {
+                regionStart[regions] = start;
+                regionSettled[regions] = false;
+                regions++;
+            } else {
+                for (int q = start; q < end; q++) region[regionNodes[q]] = -1;
+                end = start;
+            }
+        }
+        regionStart[regions] = end;
+        regionsValid = true;
+    }
+
+    /** Whether gas can flow through {@code edge}, see {@link #computeFlux}. */
+    private boolean isOpen(int edge) {
+        int from = edgeFrom[edge];
+        int to = edgeTo[edge];
+        return from >= 0 && to >= 0 && !closed[from] && !closed[to] && volume[from] > 0 && volume[to] > 0;
+    }
+
+    @Override
+    public boolean changed(int node) {
+        return amount[node] != previousAmount;
+    }
+
+    @Override
+    public boolean stepsGlobally() {
+        return implicit;
+    }
+
+    @Override
+    public long step(float dt) {
+        // Nothing moved while asleep, so the time since the last step is not caught up on
+        if (asleep) dt = Math.min(dt, GasNetworkComponent.TICK_MS * 1e-3f);
+        int n = nodeCount;
+        if (capacity.length < n) {
+            capacity       = new double[n];
+            diagonal       = new double[n];
+            pressure       = new double[n];
+            startPressure  = new double[n];
+            residual       = new double[n];
+            preconditioned = new double[n];
+            direction      = new double[n];
+            product        = new double[n];
+        }
+        if (conductance.length < flux.length) conductance = new double[flux.length];
+
+        for (int i = 0; i < n; i++) {
+            startPressure[i] = GasNetworkComponent.pressure(amount[i], volume[i]);
+            capacity[i] = volume[i] > 0 ? volume[i] / (GasNetworkComponent.R * GasNetworkComponent.TEMPERATURE) : 0.0;
+        }
+
+        int substeps = GasNetworkComponent.substeps(dt, MAX_STEP_SECONDS);
+        for (int k = 0; k < substeps; k++) advance(dt / substeps);
+
+        boolean working = false;
+        double change = 0.0;
+        for (int i = 0; i < n; i++) {
+            if (capacity[i] <= 0) continue;
+            working |= GasNetworkComponent.isWorking(type[i], amount[i], volume[i], targetPressure[i]);
+            change = Math.max(change, Math.abs(GasNetworkComponent.pressure(amount[i], volume[i]) - startPressure[i]));
+        }
+        long delay = GasNetworkComponent.computeDelayNanos(working, change, dt);
+        asleep = delay == BlockNetworkComponent.SLEEP;
+        return delay;
+    }
+
+    /** One implicit step of {@code dt} seconds. */
+    private void advance(float dt) {
+        int n = nodeCount;
+        System.arraycopy(capacity, 0, diagonal, 0, n);
+
+        // Boundary terms: sources and sinks, then pumps scaled to the step, act on the amounts before the solve
+        for (int i = 0; i < n; i++) {
+            if (!GasNetworkComponent.isActive(type[i])) continue;
+            amount[i] = GasNetworkComponent.tickAmount(type[i], amount[i], volume[i], targetPressure[i], maxRate[i], dt);
+        }
+        int edgeCount = edgeFrom.length;
+        for (int e = 0; e < edgeCount; e++) {
+            conductance[e] = 0.0;
+            if (!isOpen(e)) {
+                flux[e] = 0.0;
+                continue;
+            }
+            int from = edgeFrom[e];
+            int to = edgeTo[e];
+            if (from == to) {
+                flux[e] = 0.0;
+                continue;
+            }
+            if (GasNetworkComponent.isEqualizing(fromType[e], toType[e])) {
+                double g = dt * GasNetworkComponent.conductance(volume[from], volume[to]);
+                conductance[e] = g;
+                diagonal[from] += g;
+                diagonal[to] += g;
+            } else {
+                computeFlux(e, from, to);
+                flux[e] *= GasNetworkComponent.fluxScale(dt);
+                amount[from] = Math.max(GasNetworkComponent.MIN_AMOUNT, amount[from] - flux[e]);
+                amount[to]   = Math.max(GasNetworkComponent.MIN_AMOUNT, amount[to] + flux[e]);
+            }
+        }
+
+        // Backward Euler: (C + dt L) p' = C p, with the current pressures as the initial guess
+        for (int i = 0; i < n; i++) {
+            pressure[i] = GasNetworkComponent.pressure(amount[i], volume[i]);
+            if (diagonal[i] <= 0) diagonal[i] = 1.0;  // no volume: the row is p' = 0
+        }
+        solvePressure(n);
+
+        for (int i = 0; i < n; i++) {
+            if (capacity[i] > 0) amount[i] = Math.max(GasNetworkComponent.MIN_AMOUNT, capacity[i] * pressure[i]);
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            if (conductance[e] > 0) flux[e] = conductance[e] * (pressure[edgeFrom[e]] - pressure[edgeTo[e]]);
+        }
+    }
+
+    /**
+     * Solves (C + L) p = C p0 for {@link #pressure} in place, where C is {@link #capacity} and L the
+     * Laplacian of the (dt-scaled) {@link #conductance}s, whose diagonal is in {@link #diagonal}.
+     */
+    private void solvePressure(int n) {
+        multiply(pressure, product, n);
+        double rz = 0.0;
+        double norm = 0.0;
+        for (int i = 0; i < n; i++) {
+            double rhs = capacity[i] * pressure[i];
+            norm += rhs * rhs;
+            residual[i] = rhs - product[i];
+            preconditioned[i] = residual[i] / diagonal[i];
+            direction[i] = preconditioned[i];
+            rz += residual[i] * preconditioned[i];
+        }
+        double tolerance = SOLVER_TOLERANCE * SOLVER_TOLERANCE * norm;
+
+        for (int iteration = 0; iteration < MAX_SOLVER_ITERATIONS; iteration++) {
+            double rr = 0.0;
+            for (int i = 0; i < n; i++) rr += residual[i] * residual[i];
+            if (rr <= tolerance) return;
+
+            multiply(direction, product, n);
+            double dAd = 0.0;
+            for (int i = 0; i < n; i++) dAd += direction[i] * product[i];
+            if (dAd <= 0) return;
+            double alpha = rz / dAd;
+
+            double nextRz = 0.0;
+            for (int i = 0; i < n; i++) {
+                pressure[i] += alpha * direction[i];
+                residual[i] -= alpha * product[i];
+                preconditioned[i] = residual[i] / diagonal[i];
+                nextRz += residual[i] * preconditioned[i];
+            }
+            double beta = nextRz / rz;
+            rz = nextRz;
+            for (int i = 0; i < n; i++) direction[i] = preconditioned[i] + beta * direction[i];
+        }
+    }
+
+    /** {@code into = (C + L) x} */
+    private void multiply(double[] x, double[] into, int n) {
+        for (int i = 0; i < n; i++) {
+            double sum = diagonal[i] * x[i];
+            for (int k = nodeEdgeOffsets[i]; k < nodeEdgeOffsets[i + 1]; k++) {
+                int e = nodeEdges[k];
+                double g = conductance[e];
+                if (g == 0) continue;
+                sum -= g * x[edgeFrom[e] == i ? edgeTo[e] : edgeFrom[e]];
+            }
+            into[i] = sum;
+        }
+    }
+
+    @Override
+    public int snapshotChannels() {
+        return 3;
+    }
+
+    @Override
+    public void snapshot(double[][] into, int nodeCount) {
+        System.arraycopy(amount, 0, into[GasNetworkResource.SNAPSHOT_AMOUNT], 0, nodeCount);
+        System.arraycopy(volume, 0, into[GasNetworkResource.SNAPSHOT_VOLUME], 0, nodeCount);
+        double[] pressure = into[GasNetworkResource.SNAPSHOT_PRESSURE];
+        for (int i = 0; i < nodeCount; i++) pressure[i] = GasNetworkComponent.pressure(amount[i], volume[i]);
+    }
+
+    @Override
+    public long computeDelay(int node, float dt) {
+        double pressure = GasNetworkComponent.pressure(amount[node], volume[node]);
+        boolean working = GasNetworkComponent.isWorking(type[node], amount[node], volume[node], targetPressure[node]);
+        return GasNetworkComponent.computeDelayNanos(working, Math.abs(pressure - previousPressure), dt);
+    }
+}
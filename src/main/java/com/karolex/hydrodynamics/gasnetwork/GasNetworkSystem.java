@@ -4,17 +4,13 @@ import com.hypixel.hytale.component.*;
 import com.hypixel.hytale.component.query.Query;
 import com.hypixel.hytale.component.system.EntityEventSystem;
 import com.hypixel.hytale.component.system.tick.TickingSystem;
-import com.hypixel.hytale.math.util.ChunkUtil;
-import com.hypixel.hytale.math.vector.Vector3i;
 import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
 import com.hypixel.hytale.server.core.event.events.ecs.BreakBlockEvent;
 import com.hypixel.hytale.server.core.event.events.ecs.PlaceBlockEvent;
 import com.hypixel.hytale.server.core.event.events.ecs.UseBlockEvent;
 import com.hypixel.hytale.server.core.modules.interaction.interaction.config.client.UseBlockInteraction;
 import com.hypixel.hytale.server.core.modules.time.TimeResource;
-import com.hypixel.hytale.server.core.universe.Universe;
 import com.hypixel.hytale.server.core.universe.world.World;
-import com.hypixel.hytale.server.core.universe.world.storage.ChunkStore;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
@@ -29,7 +25,9 @@ public class GasNetworkSystem {
         @Override
         public void tick(float dt, int index, @NonNull Store<EntityStore> store) {
             GasNetworkResource network = store.getResource(GasNetworkResource.getResourceType());
-            network.tick();
+            network.bind(store.getExternalData().getWorld());
+            if (network.isIdle()) return;
+            network.tick(store.getResource(TimeResource.getResourceType()).getNow());
         }
     }
 
@@ -41,23 +39,11 @@ public class GasNetworkSystem {
             try {
                 if (!event.getBlockType().getId().contains("Valve")) return;    // Can be done cleaner!
 
-                World world = Universe.get().getDefaultWorld();
+                World world = entityStore.getExternalData().getWorld();
                 if (world == null) return;
 
-                Vector3i targetPos = event.getTargetBlock();
-                int x = targetPos.getX();
-                int y = targetPos.getY();
-                int z = targetPos.getZ();
-
                 GasNetworkResource network = entityStore.getResource(GasNetworkResource.getResourceType());
-
-                world.execute(() -> {
-                    try {
-                        network.onValveToggled(new Vector3i(x, y, z));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
+                network.queueBlockToggled(world, event.getTargetBlock());
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -75,39 +61,12 @@ public class GasNetworkSystem {
         @Override
         public void handle(int index, @NonNull ArchetypeChunk<EntityStore> archetypeChunk, @NonNull Store<EntityStore> entityStore, @NonNull CommandBuffer<EntityStore> commandBuffer, @NonNull PlaceBlockEvent placeBlockEvent) {
             try {
-                World world = Universe.get().getDefaultWorld();
+                World world = entityStore.getExternalData().getWorld();
                 if (world == null) return;
 
-                Vector3i targetPos = placeBlockEvent.getTargetBlock();
-                int x = targetPos.getX();
-                int y = targetPos.getY();
-                int z = targetPos.getZ();
-
+                // Applied with all other block events of this tick, once the block is in the world.
                 GasNetworkResource network = entityStore.getResource(GasNetworkResource.getResourceType());
-
-                world.execute(() -> {
-                    try {
-                        BlockType bt = world.getBlockType(x, y, z);
-                        Holder<ChunkStore> blockEntity = bt.getBlockEntity();
-                        if (blockEntity == null) return;
-
-                        GasNetworkComponent component = blockEntity.getComponent(GasNetworkComponent.getComponentType());
-                        if (component == null) return;
-
-                        var chunk = world.getChunk(ChunkUtil.indexChunkFromBlock(x, z));
-
-                        // TODO: Improve later: Can get bounding box first, so it doesn't have to get it multiple times (unless it doesn't...?)
-                        network.onBlockPlaced(
-                                new Vector3i(x, y, z),
-                                chunk,
-                                component.copy(),    // COPY is important!
-                                bt
-                        );
-                        System.out.println("placed");
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
+                network.queueBlockPlaced(world, placeBlockEvent.getTargetBlock());
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -125,32 +84,14 @@ public class GasNetworkSystem {
         @Override
         public void handle(int i, @NonNull ArchetypeChunk<EntityStore> archetypeChunk, @NonNull Store<EntityStore> entityStore, @NonNull CommandBuffer<EntityStore> commandBuffer, @NonNull BreakBlockEvent breakBlockEvent) {
             try {
-                World world = Universe.get().getDefaultWorld();
+                World world = entityStore.getExternalData().getWorld();
                 if (world == null) return;
 
-                Vector3i targetPos = breakBlockEvent.getTargetBlock();
-                int x = targetPos.getX();
-                int y = targetPos.getY();
-                int z = targetPos.getZ();
+                BlockType bt = breakBlockEvent.getBlockType();
+                if (bt.getBlockEntity() == null) return;
 
                 GasNetworkResource network = entityStore.getResource(GasNetworkResource.getResourceType());
-
-                world.execute(() -> {
-                    try {
-                        BlockType bt = breakBlockEvent.getBlockType();
-                        Holder<ChunkStore> blockEntity = bt.getBlockEntity();
-                        if (blockEntity == null) return;
-
-                        var chunk = world.getChunk(ChunkUtil.indexChunkFromBlock(x, z));
-                        network.onBlockRemoved(
-                                new Vector3i(x, y, z),
-                                chunk,
-                                bt
-                        );
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
+                network.queueBlockRemoved(world, breakBlockEvent.getTargetBlock(), bt);
             } catch (Exception e) {
                 e.printStackTrace();
             }
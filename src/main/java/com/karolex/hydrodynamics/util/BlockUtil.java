@@ -37,6 +37,19 @@ public class BlockUtil {
             new Vector3i( 0,  0,  1),  // SOUTH
     };
 
+    private static final int ROTATIONS_PER_AXIS = Rotation.values().length;
+    static final int ROTATION_COUNT = ROTATIONS_PER_AXIS * ROTATIONS_PER_AXIS * ROTATIONS_PER_AXIS;
+
+    // Connection masks by block type index * ROTATION_COUNT + rotation index, tagged with MASK_CACHED; 0 = not computed yet.
+    private static final byte MASK_CACHED = (byte) 0x40;
+    private static volatile byte[] maskCache = new byte[0];
+
+    // Hitbox footprints by hitbox type index * ROTATION_COUNT + rotation index, null = not computed yet.
+    private static volatile int[][] footprintCache = new int[0][];
+    private static final int[] SINGLE_BLOCK = { 0 };
+    private static final int OFFSET_BITS = 10;
+    private static final int OFFSET_MASK = (1 << OFFSET_BITS) - 1;
+
     private static final Field CONNECTED_BLOCK_SHAPES_FIELD;
     static {
         try {
@@ -60,6 +73,20 @@ public class BlockUtil {
         return NONE;
     }
 
+    /**
+     * Index into {@link #FACE_OFFSETS} of a unit direction, -1 for anything else.
+     */
+    public static int faceIndex(int dx, int dy, int dz) {
+        if (Math.abs(dx) + Math.abs(dy) + Math.abs(dz) != 1) return -1;
+        if (dx != 0) return dx < 0 ? 0 : 1;
+        if (dy != 0) return dy < 0 ? 2 : 3;
+        return dz < 0 ? 4 : 5;
+    }
+
+    public static int faceIndex(Vector3i dir) {
+        return faceIndex(dir.x, dir.y, dir.z);
+    }
+
     public static byte opposite(byte face) {
         return switch (face) {
             case WEST  -> EAST;
@@ -72,10 +99,97 @@ public class BlockUtil {
         };
     }
 
+    // Packed positions: 26 bits x | 26 bits z | 12 bits y, each two's complement.
+    private static final int PACKED_XZ_BITS = 26;
+    private static final int PACKED_Y_BITS  = 12;
+    private static final long PACKED_XZ_MASK = (1L << PACKED_XZ_BITS) - 1;
+    private static final long PACKED_Y_MASK  = (1L << PACKED_Y_BITS) - 1;
+    private static final int PACKED_X_SHIFT = PACKED_XZ_BITS + PACKED_Y_BITS;
+    private static final int PACKED_Z_SHIFT = PACKED_Y_BITS;
+
+    /**
+     * Packs a block position into a single long, for primitive position indices.
+     * Covers x and z in &plusmn;2<sup>25</sup> and y in &plusmn;2<sup>11</sup>.
+     */
+    public static long pack(int x, int y, int z) {
+        return ((x & PACKED_XZ_MASK) << PACKED_X_SHIFT)
+                | ((z & PACKED_XZ_MASK) << PACKED_Z_SHIFT)
+                | (y & PACKED_Y_MASK);
+    }
+
+    public static long pack(Vector3i pos) {
+        return pack(pos.x, pos.y, pos.z);
+    }
+
+    public static long pack(Vector3i pos, Vector3i offset) {
+        return pack(pos.x + offset.x, pos.y + offset.y, pos.z + offset.z);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> PACKED_X_SHIFT);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) (packed << (64 - PACKED_Y_BITS) >> (64 - PACKED_Y_BITS));
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) (packed << (64 - PACKED_X_SHIFT) >> (64 - PACKED_XZ_BITS));
+    }
+
+    public static Vector3i unpack(long packed) {
+        return new Vector3i(unpackX(packed), unpackY(packed), unpackZ(packed));
+    }
+
+    public static long offset(long packed, Vector3i offset) {
+        return pack(unpackX(packed) + offset.x, unpackY(packed) + offset.y, unpackZ(packed) + offset.z);
+    }
+
+    /**
+     * Connection mask of the block at {@code pos}, a combination of the face bits. The mask only
+     * depends on block type and rotation, so it is computed once per pair and cached.
+     */
     public static byte readFromWorld(WorldChunk chunk, Vector3i pos) {
         BlockType blockType = chunk.getBlockType(pos);
         if (blockType == null) return BlockUtil.NONE;
 
+        int blockTypeIndex = BlockType.getAssetMap().getIndex(blockType.getId());
+        @SuppressWarnings("removal")
+        RotationTuple rotation = chunk.getRotation(pos.x, pos.y, pos.z);
+        if (blockTypeIndex < 0) return computeMask(blockType, blockTypeIndex, rotation);
+
+        int key = blockTypeIndex * ROTATION_COUNT + rotationIndex(rotation);
+        byte[] cache = maskCache;
+        if (key < cache.length && cache[key] != 0) return (byte) (cache[key] & ~MASK_CACHED);
+
+        byte mask = computeMask(blockType, blockTypeIndex, rotation);
+        cacheMask(key, mask);
+        return mask;
+    }
+
+    /**
+     * Drops all cached connection masks, e.g. after block type assets were reloaded.
+     */
+    public static synchronized void clearConnectionCache() {
+        maskCache = new byte[0];
+    }
+
+    private static synchronized void cacheMask(int key, byte mask) {
+        byte[] cache = maskCache;
+        if (key >= cache.length) cache = Arrays.copyOf(cache, Math.max(key + 1, cache.length * 2));
+        cache[key] = (byte) (mask | MASK_CACHED);
+        maskCache = cache;
+    }
+
+    static int rotationIndex(RotationTuple rotation) {
+        return rotationIndex(rotation.yaw(), rotation.pitch(), rotation.roll());
+    }
+
+    static int rotationIndex(Rotation yaw, Rotation pitch, Rotation roll) {
+        return (yaw.ordinal() * ROTATIONS_PER_AXIS + pitch.ordinal()) * ROTATIONS_PER_AXIS + roll.ordinal();
+    }
+
+    private static byte computeMask(BlockType blockType, int blockTypeIndex, RotationTuple rotation) {
         ConnectedBlockRuleSet rs = blockType.getConnectedBlockRuleSet();
         if (!(rs instanceof CustomTemplateConnectedBlockRuleSet ctrs))
             return BlockUtil.NONE;
@@ -83,7 +197,6 @@ public class BlockUtil {
         CustomConnectedBlockTemplateAsset tmpl = ctrs.getShapeTemplateAsset();
         if (tmpl == null) return BlockUtil.NONE;
 
-        int blockTypeIndex = BlockType.getAssetMap().getIndex(blockType.getId());
         Set<String> shapeNames = ctrs.getShapesForBlockType(blockTypeIndex);
         if (shapeNames == null || shapeNames.isEmpty()) return BlockUtil.NONE;
 
@@ -99,8 +212,6 @@ public class BlockUtil {
         ConnectedBlockShape shape = connectedBlockShapes.get(shapeName);
         if (shape == null || shape.getFaceTags() == null) return BlockUtil.NONE;
 
-        @SuppressWarnings("removal")
-        RotationTuple rotation = chunk.getRotation(pos.x, pos.y, pos.z);
         byte mask = 0;
         for (var entry : shape.getFaceTags().getBlockFaceTags().entrySet()) {
             Vector3i worldDir = Rotation.rotate(
@@ -129,32 +240,74 @@ public class BlockUtil {
     public static Set<Vector3i> getOccupiedPositions(BlockType blockType, Vector3i origin, WorldChunk chunk) {
         if (blockType == null) return Set.of(origin);
 
-        BlockBoundingBoxes hitbox = BlockBoundingBoxes.getAssetMap().getAsset(blockType.getHitboxTypeIndex());
-        if (hitbox == null || !hitbox.protrudesUnitBox()) return Set.of(origin);
-
         @SuppressWarnings("removal")
         RotationTuple rotation = chunk.getRotation(origin.x, origin.y, origin.z);
-        BlockBoundingBoxes.RotatedVariantBoxes variant = hitbox.get(rotation.yaw(), rotation.pitch(), rotation.roll());
+        int[] footprint = getFootprint(blockType.getHitboxTypeIndex(), rotation);
+        if (footprint == SINGLE_BLOCK) return Set.of(origin);
 
         Set<Vector3i> result = new LinkedHashSet<>();
-        FillerBlockUtil.forEachFillerBlock(variant, (x, y, z) ->
-                result.add(new Vector3i(origin.x + x, origin.y + y, origin.z + z))
-        );
+        for (int offset : footprint) {
+            result.add(new Vector3i(origin.x + offsetX(offset), origin.y + offsetY(offset), origin.z + offsetZ(offset)));
+        }
         return result;
     }
 
-    public static Map<Vector3i, String> rotateConnectionPoints(
-            Map<Vector3i, String> connectionPoints,
-            RotationTuple rotation) {
+    /**
+     * Positions occupied by a block relative to its origin, as offsets packed by {@link #packOffset}.
+     * Cached per hitbox type and rotation.
+     */
+    public static int[] getFootprint(int hitboxTypeIndex, RotationTuple rotation) {
+        if (hitboxTypeIndex < 0) return computeFootprint(hitboxTypeIndex, rotation);
 
-        Map<Vector3i, String> rotated = new HashMap<>();
-        for (Map.Entry<Vector3i, String> connection : connectionPoints.entrySet()) {
-            Vector3i worldDir = Rotation.rotate(
-                    connection.getKey().clone(),
-                    rotation.yaw(), rotation.pitch(), rotation.roll()
-            );
-            rotated.put(worldDir, connection.getValue());
+        int key = hitboxTypeIndex * ROTATION_COUNT + rotationIndex(rotation);
+        int[][] cache = footprintCache;
+        if (key < cache.length && cache[key] != null) return cache[key];
+
+        int[] footprint = computeFootprint(hitboxTypeIndex, rotation);
+        synchronized (BlockUtil.class) {
+            cache = footprintCache;
+            if (key >= cache.length) cache = Arrays.copyOf(cache, Math.max(key + 1, cache.length * 2));
+            cache[key] = footprint;
+            footprintCache = cache;
         }
-        return rotated;
+        return footprint;
+    }
+
+    private static int[] computeFootprint(int hitboxTypeIndex, RotationTuple rotation) {
+        BlockBoundingBoxes hitbox = BlockBoundingBoxes.getAssetMap().getAsset(hitboxTypeIndex);
+        if (hitbox == null || !hitbox.protrudesUnitBox()) return SINGLE_BLOCK;
+
+        BlockBoundingBoxes.RotatedVariantBoxes variant = hitbox.get(rotation.yaw(), rotation.pitch(), rotation.roll());
+        int[][] offsets = { new int[8] };
+        int[] count = { 0 };
+        FillerBlockUtil.forEachFillerBlock(variant, (x, y, z) -> {
+            if (count[0] == offsets[0].length) offsets[0] = Arrays.copyOf(offsets[0], count[0] * 2);
+            offsets[0][count[0]++] = packOffset(x, y, z);
+        });
+        return Arrays.copyOf(offsets[0], count[0]);
+    }
+
+    /** Packs a small offset, each axis in [-512, 511], into an int. */
+    public static int packOffset(int x, int y, int z) {
+        return ((x & OFFSET_MASK) << (2 * OFFSET_BITS)) | ((y & OFFSET_MASK) << OFFSET_BITS) | (z & OFFSET_MASK);
+    }
+
+    public static int offsetX(int packed) {
+        return packed << (32 - 3 * OFFSET_BITS) >> (32 - OFFSET_BITS);
+    }
+
+    public static int offsetY(int packed) {
+        return packed << (32 - 2 * OFFSET_BITS) >> (32 - OFFSET_BITS);
+    }
+
+    public static int offsetZ(int packed) {
+        return packed << (32 - OFFSET_BITS) >> (32 - OFFSET_BITS);
+    }
+
+    /**
+     * Drops all cached hitbox footprints, e.g. after hitbox assets were reloaded.
+     */
+    public static synchronized void clearFootprintCache() {
+        footprintCache = new int[0][];
     }
 }
@@ -0,0 +1,110 @@
+package com.karolex.hydrodynamics.util;
+
+import java.util.Arrays;
+
+/**
+ * Indexed 4-ary min-heap on exact deadlines. Every entry stores its own heap position,
+ * so rescheduling and cancelling are O(log n) without any lookup.
+ *
+ * @param <T> scheduled type, carrying its own heap index
+ */
+public class IndexedHeapSchedule<T extends ScheduleEntry> implements Schedule<T> {
+
+    private static final int ARITY = 4;
+
+    private ScheduleEntry[] heap = new ScheduleEntry[16];
+    private int size;
+
+    @Override
+    public void insert(T entry, long deadline) {
+        if (entry.isScheduled()) {
+            long previous = entry.deadline;
+            entry.deadline = deadline;
+            if (deadline < previous) siftUp(entry.slot, entry);
+            else siftDown(entry.slot, entry);
+            return;
+        }
+
+        if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+        entry.deadline = deadline;
+        siftUp(size++, entry);
+    }
+
+    @Override
+    public void cancel(T entry) {
+        if (!entry.isScheduled()) return;
+        removeAt(entry.slot);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll(long now) {
+        if (size == 0 || heap[0].deadline > now) return null;
+        ScheduleEntry root = heap[0];
+        removeAt(0);
+        return (T) root;
+    }
+
+    @Override
+    public long peekDeadline() {
+        return size == 0 ? Long.MAX_VALUE : heap[0].deadline;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            heap[i].slot = ScheduleEntry.UNSCHEDULED;
+            heap[i] = null;
+        }
+        size = 0;
+    }
+
+    private void removeAt(int index) {
+        ScheduleEntry removed = heap[index];
+        ScheduleEntry last = heap[--size];
+        heap[size] = null;
+        removed.slot = ScheduleEntry.UNSCHEDULED;
+        if (index == size) return;
+
+        if (last.deadline < removed.deadline) siftUp(index, last);
+        else siftDown(index, last);
+    }
+
+    private void siftUp(int index, ScheduleEntry entry) {
+        while (index > 0) {
+            int parent = (index - 1) / ARITY;
+            ScheduleEntry p = heap[parent];
+            if (p.deadline <= entry.deadline) break;
+            heap[index] = p;
+            p.slot = index;
+            index = parent;
+        }
+        heap[index] = entry;
+        entry.slot = index;
+    }
+
+    private void siftDown(int index, ScheduleEntry entry) {
+        while (true) {
+            int first = index * ARITY + 1;
+            if (first >= size) break;
+
+            int min = first;
+            int end = Math.min(first + ARITY, size);
+            for (int c = first + 1; c < end; c++) {
+                if (heap[c].deadline < heap[min].deadline) min = c;
+            }
+            if (heap[min].deadline >= entry.deadline) break;
+
+            heap[index] = heap[min];
+            heap[index].slot = index;
+            index = min;
+        }
+        heap[index] = entry;
+        entry.slot = index;
+    }
+}
@@ -0,0 +1,152 @@
+package com.karolex.hydrodynamics.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash set of primitive {@code long}s, for block positions packed with
+ * {@link BlockUtil#pack}. {@code 0} marks an empty slot and is tracked separately.
+ */
+public class LongHashSet {
+
+    // Small, most nodes hold a single block.
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] keys;
+    private int mask;
+    private int size;       // including the zero key
+    private boolean hasZero;
+
+    public LongHashSet() {
+        this(1);
+    }
+
+    public LongHashSet(int expectedSize) {
+        allocate(LongObjectMap.tableSize(expectedSize, MIN_CAPACITY));
+    }
+
+    public LongHashSet(LongHashSet other) {
+        keys = other.keys.clone();
+        mask = other.mask;
+        size = other.size;
+        hasZero = other.hasZero;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) return hasZero;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == 0) return false;
+            if (k == key) return true;
+        }
+    }
+
+    /**
+     * @return whether {@code key} was not contained before
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (hasZero) return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int i = mix(key) & mask;
+        for (long k; (k = keys[i]) != 0; i = (i + 1) & mask) {
+            if (k == key) return false;
+        }
+        keys[i] = key;
+        if (++size > (mask + 1) >>> 1) rehash((mask + 1) << 1);
+        return true;
+    }
+
+    /**
+     * @return whether {@code key} was contained
+     */
+    public boolean remove(long key) {
+        if (key == 0) {
+            if (!hasZero) return false;
+            hasZero = false;
+            size--;
+            return true;
+        }
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == 0) return false;
+            if (k == key) {
+                shiftBack(i);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Any element of the set, for picking BFS seeds. The set must not be empty.
+     */
+    public long first() {
+        if (hasZero) return 0;
+        for (long k : keys) if (k != 0) return k;
+        throw new IllegalStateException("Set is empty");
+    }
+
+    public void forEach(LongConsumer action) {
+        if (hasZero) action.accept(0);
+        for (long k : keys) if (k != 0) action.accept(k);
+    }
+
+    public long[] toArray() {
+        long[] result = new long[size];
+        int n = 0;
+        if (hasZero) result[n++] = 0;
+        for (long k : keys) if (k != 0) result[n++] = k;
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    private void shiftBack(int gap) {
+        for (int i = (gap + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            int home = mix(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                gap = i;
+            }
+        }
+        keys[gap] = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        allocate(capacity);
+        for (long k : old) {
+            if (k == 0) continue;
+            int i = mix(k) & mask;
+            while (keys[i] != 0) i = (i + 1) & mask;
+            keys[i] = k;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /** Spreads packed positions, whose low bits alone would cluster along the z axis. */
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
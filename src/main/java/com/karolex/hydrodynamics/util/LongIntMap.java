@@ -0,0 +1,75 @@
+package com.karolex.hydrodynamics.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to non-negative {@code int} values,
+ * e.g. from packed block positions to node indices. An empty slot is marked by a value of -1.
+ * There is no removal; instances that are no longer written may be read from any thread once
+ * safely published.
+ */
+public class LongIntMap {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public LongIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongIntMap(int expectedSize) {
+        allocate(LongObjectMap.tableSize(expectedSize, MIN_CAPACITY));
+    }
+
+    /**
+     * @return the value of {@code key}, or -1
+     */
+    public int get(long key) {
+        for (int i = LongHashSet.mix(key) & mask; ; i = (i + 1) & mask) {
+            int value = values[i];
+            if (value < 0 || keys[i] == key) return value;
+        }
+    }
+
+    public void put(long key, int value) {
+        if (value < 0) throw new IllegalArgumentException("value: " + value);
+        int i = LongHashSet.mix(key) & mask;
+        for (; values[i] >= 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (mask + 1) >>> 1) rehash((mask + 1) << 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] < 0) continue;
+            int i = LongHashSet.mix(oldKeys[j]) & mask;
+            while (values[i] >= 0) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, -1);
+        mask = capacity - 1;
+    }
+}
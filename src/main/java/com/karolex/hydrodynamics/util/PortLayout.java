@@ -0,0 +1,79 @@
+package com.karolex.hydrodynamics.util;
+
+import com.hypixel.hytale.math.vector.Vector3i;
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.Rotation;
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.RotationTuple;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connection points of a component, rotated into every block rotation up front. Ports are
+ * looked up by rotation and face index (see {@link BlockUtil#FACE_OFFSETS}), so connecting
+ * a rotated block does not have to rotate and hash vectors.
+ */
+public final class PortLayout {
+
+    private static final Map<Map<Vector3i, String>, PortLayout> CACHE = new ConcurrentHashMap<>();
+
+    // Layouts by identity of the connection point map, checked before CACHE. Components usually return
+    // one constant map per type, so this stays small, and hits neither copy nor hash the map.
+    private static final int MAX_IDENTITY_ENTRIES = 64;
+    private static volatile IdentityCache identityCache = new IdentityCache(new Object[0], new PortLayout[0]);
+
+    private record IdentityCache(Object[] keys, PortLayout[] layouts) {}
+
+    // [rotation index][face index] -> connection type, null where there is no port
+    private final String[][] ports;
+
+    private PortLayout(Map<Vector3i, String> connectionPoints) {
+        Rotation[] rotations = Rotation.values();
+        ports = new String[BlockUtil.ROTATION_COUNT][BlockUtil.FACE_OFFSETS.length];
+        for (Rotation yaw : rotations) {
+            for (Rotation pitch : rotations) {
+                for (Rotation roll : rotations) {
+                    String[] faces = ports[BlockUtil.rotationIndex(yaw, pitch, roll)];
+                    for (Map.Entry<Vector3i, String> point : connectionPoints.entrySet()) {
+                        int face = BlockUtil.faceIndex(Rotation.rotate(point.getKey().clone(), yaw, pitch, roll));
+                        if (face >= 0) faces[face] = point.getValue();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Layout of the given unrotated connection points, shared between equal maps. The map must not be
+     * modified afterwards, since layouts are also remembered by map identity.
+     */
+    public static PortLayout of(Map<Vector3i, String> connectionPoints) {
+        IdentityCache cache = identityCache;
+        for (int i = 0; i < cache.keys.length; i++) {
+            if (cache.keys[i] == connectionPoints) return cache.layouts[i];
+        }
+        PortLayout layout = CACHE.computeIfAbsent(Map.copyOf(connectionPoints), PortLayout::new);
+        remember(connectionPoints, layout);
+        return layout;
+    }
+
+    private static synchronized void remember(Map<Vector3i, String> connectionPoints, PortLayout layout) {
+        IdentityCache cache = identityCache;
+        int n = cache.keys.length;
+        if (n >= MAX_IDENTITY_ENTRIES) return;
+        for (Object key : cache.keys) if (key == connectionPoints) return;
+        Object[] keys = Arrays.copyOf(cache.keys, n + 1);
+        PortLayout[] layouts = Arrays.copyOf(cache.layouts, n + 1);
+        keys[n] = connectionPoints;
+        layouts[n] = layout;
+        identityCache = new IdentityCache(keys, layouts);
+    }
+
+    /**
+     * Connection type of the port facing {@code face} in the given block rotation, or {@code null}.
+     */
+    public String portAt(RotationTuple rotation, int face) {
+        if (face < 0) return null;
+        return ports[BlockUtil.rotationIndex(rotation)][face];
+    }
+}
@@ -0,0 +1,34 @@
+package com.karolex.hydrodynamics.util;
+
+/**
+ * Priority queue of intrusive {@link ScheduleEntry} objects ordered by {@code long} deadlines.
+ * Every entry is scheduled at most once; inserting it again replaces its deadline.
+ *
+ * @param <T> scheduled type, carrying its own bookkeeping
+ */
+public interface Schedule<T extends ScheduleEntry> {
+
+    /** Deadline that is due on the next poll, regardless of the current time. */
+    long IMMEDIATELY = Long.MIN_VALUE;
+
+    void insert(T entry, long deadline);
+
+    void cancel(T entry);
+
+    /**
+     * Removes and returns one entry that is due at {@code now}, or {@code null} if there is none.
+     */
+    T poll(long now);
+
+    /**
+     * Earliest pending deadline, {@link Long#MAX_VALUE} if empty. Backends that bucket deadlines
+     * may answer with a lower bound instead.
+     */
+    long peekDeadline();
+
+    int size();
+
+    default boolean isEmpty() { return size() == 0; }
+
+    void clear();
+}
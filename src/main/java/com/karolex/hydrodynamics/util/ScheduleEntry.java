@@ -0,0 +1,26 @@
+package com.karolex.hydrodynamics.util;
+
+/**
+ * Intrusive bookkeeping for objects that are kept in a {@link Schedule}.
+ * Holding the links on the scheduled object itself means scheduling allocates nothing.
+ * An entry can be part of at most one schedule at a time.
+ */
+public abstract class ScheduleEntry {
+
+    static final int UNSCHEDULED = -1;
+
+    // Bucket links, only used by the timing wheel.
+    ScheduleEntry prev;
+    ScheduleEntry next;
+    // Wheel bucket or heap index.
+    int slot = UNSCHEDULED;
+    long deadline;
+
+    public final boolean isScheduled() {
+        return slot != UNSCHEDULED;
+    }
+
+    public final long deadline() {
+        return deadline;
+    }
+}
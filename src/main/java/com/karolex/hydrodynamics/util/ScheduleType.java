@@ -0,0 +1,21 @@
+package com.karolex.hydrodynamics.util;
+
+/**
+ * Available {@link Schedule} backends.
+ */
+public enum ScheduleType {
+    TIMING_WHEEL,
+    INDEXED_HEAP,
+    TREE_MAP;
+
+    /**
+     * @param resolution slot width in nanoseconds, only used by backends that bucket deadlines
+     */
+    public <T extends ScheduleEntry> Schedule<T> create(long resolution) {
+        return switch (this) {
+            case TIMING_WHEEL -> new TimingWheelSchedule<>(resolution);
+            case INDEXED_HEAP -> new IndexedHeapSchedule<>();
+            case TREE_MAP     -> new UniqueSchedule<>();
+        };
+    }
+}
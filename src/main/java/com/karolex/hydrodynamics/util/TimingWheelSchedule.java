@@ -0,0 +1,176 @@
+package com.karolex.hydrodynamics.util;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel keyed by {@code long} nanosecond deadlines.
+ * <p>
+ * Deadlines are rounded up to slots of {@code resolution} nanoseconds, so an entry is never
+ * polled before its deadline but may be polled up to one slot late. Every level holds 64 slots
+ * and a bitmask of the occupied ones, which lets {@link #poll(long)} skip idle stretches of
+ * time without walking empty slots. Insert, reschedule and cancel are O(1); entries sharing
+ * the same deadline are all kept.
+ *
+ * @param <T> scheduled type, carrying its own links
+ */
+public class TimingWheelSchedule<T extends ScheduleEntry> implements Schedule<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS     = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS    = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+    private static final int DUE       = LEVELS * SLOTS;
+
+    private final long resolution;
+    private final ScheduleEntry[] heads = new ScheduleEntry[DUE + 1];
+    private final long[] occupied = new long[LEVELS];
+    private long currentTick;
+    private int size;
+
+    public TimingWheelSchedule(long resolution) {
+        if (resolution <= 0) throw new IllegalArgumentException("Resolution must be positive: " + resolution);
+        this.resolution = resolution;
+    }
+
+    @Override
+    public void insert(T entry, long deadline) {
+        if (entry.isScheduled()) unlink(entry);
+        else size++;
+        entry.deadline = deadline;
+        place(entry);
+    }
+
+    @Override
+    public void cancel(T entry) {
+        if (!entry.isScheduled()) return;
+        unlink(entry);
+        size--;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll(long now) {
+        if (heads[DUE] == null) advance(Math.max(0, Math.floorDiv(now, resolution)));
+
+        ScheduleEntry entry = heads[DUE];
+        if (entry == null) return null;
+        unlink(entry);
+        size--;
+        return (T) entry;
+    }
+
+    @Override
+    public long peekDeadline() {
+        if (heads[DUE] != null) return IMMEDIATELY;
+        for (int level = 0; level < LEVELS; level++) {
+            if (occupied[level] == 0) continue;
+            long slotStart = slotStart(level, Long.numberOfTrailingZeros(occupied[level]));
+            return slotStart > Long.MAX_VALUE / resolution ? Long.MAX_VALUE : slotStart * resolution;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < heads.length; i++) {
+            ScheduleEntry entry = heads[i];
+            while (entry != null) {
+                ScheduleEntry next = entry.next;
+                entry.prev = null;
+                entry.next = null;
+                entry.slot = ScheduleEntry.UNSCHEDULED;
+                entry = next;
+            }
+            heads[i] = null;
+        }
+        Arrays.fill(occupied, 0L);
+        size = 0;
+    }
+
+    private long tickOf(long deadline) {
+        return Math.max(0, Math.ceilDiv(deadline, resolution));
+    }
+
+    /**
+     * Moves the wheel forward to {@code target}, cascading the slots passed on the way
+     * until something becomes due.
+     */
+    private void advance(long target) {
+        while (heads[DUE] == null && currentTick < target) {
+            int level = 0;
+            while (level < LEVELS && occupied[level] == 0) level++;
+            if (level == LEVELS) {
+                currentTick = target;
+                return;
+            }
+
+            // Everything on a lower level is earlier than anything on a higher one,
+            // and the lowest occupied slot of a level is its earliest.
+            int slot = Long.numberOfTrailingZeros(occupied[level]);
+            long slotStart = slotStart(level, slot);
+            if (slotStart > target) {
+                currentTick = target;
+                return;
+            }
+
+            currentTick = slotStart;
+            int index = level * SLOTS + slot;
+            ScheduleEntry entry = heads[index];
+            heads[index] = null;
+            occupied[level] &= ~(1L << slot);
+            while (entry != null) {
+                ScheduleEntry next = entry.next;
+                place(entry);
+                entry = next;
+            }
+        }
+    }
+
+    /**
+     * First tick covered by {@code slot} of {@code level}, relative to the current tick.
+     */
+    private long slotStart(int level, int slot) {
+        int shift = level * SLOT_BITS;
+        return (((currentTick >>> shift) & ~(long) SLOT_MASK) | slot) << shift;
+    }
+
+    private void place(ScheduleEntry entry) {
+        long tick = tickOf(entry.deadline);
+        if (tick <= currentTick) {
+            link(entry, DUE);
+            return;
+        }
+        int level = (63 - Long.numberOfLeadingZeros(tick ^ currentTick)) / SLOT_BITS;
+        int slot  = (int) (tick >>> (level * SLOT_BITS)) & SLOT_MASK;
+        link(entry, level * SLOTS + slot);
+        occupied[level] |= 1L << slot;
+    }
+
+    private void link(ScheduleEntry entry, int index) {
+        ScheduleEntry head = heads[index];
+        entry.prev = null;
+        entry.next = head;
+        entry.slot = index;
+        if (head != null) head.prev = entry;
+        heads[index] = entry;
+    }
+
+    private void unlink(ScheduleEntry entry) {
+        int index = entry.slot;
+        if (entry.prev != null) entry.prev.next = entry.next;
+        else heads[index] = entry.next;
+        if (entry.next != null) entry.next.prev = entry.prev;
+
+        if (index != DUE && heads[index] == null)
+            occupied[index / SLOTS] &= ~(1L << (index & SLOT_MASK));
+
+        entry.prev = null;
+        entry.next = null;
+        entry.slot = ScheduleEntry.UNSCHEDULED;
+    }
+}
@@ -1,46 +1,72 @@
 package com.karolex.hydrodynamics.util;
 
-import java.time.Instant;
-import java.util.HashMap;
+import java.util.ArrayDeque;
 import java.util.Map;
 import java.util.TreeMap;
 
-public class UniqueSchedule<T> {
+/**
+ * {@link TreeMap} backed schedule on exact deadlines. Kept as the reference backend to
+ * benchmark the others against.
+ */
+public class UniqueSchedule<T extends ScheduleEntry> implements Schedule<T> {
 
-    private final TreeMap<Instant, T> sorted = new TreeMap<>();
-    private final HashMap<T, Instant> timestamps = new HashMap<>();
+    private static final int SCHEDULED = 0;
 
-    public void insert(T obj, Instant timestamp) {
-        Instant existing = timestamps.get(obj);
-        if (existing != null) sorted.remove(existing);
+    private final TreeMap<Long, ArrayDeque<T>> sorted = new TreeMap<>();
+    private int size;
 
-        timestamps.put(obj, timestamp);
-        sorted.put(timestamp, obj);
+    @Override
+    public void insert(T entry, long deadline) {
+        if (entry.isScheduled()) remove(entry);
+        else size++;
+
+        entry.deadline = deadline;
+        entry.slot = SCHEDULED;
+        sorted.computeIfAbsent(deadline, d -> new ArrayDeque<>()).add(entry);
     }
 
-    public T peekEarliest() {
-        Map.Entry<Instant, T> entry = sorted.firstEntry();
-        return entry != null ? entry.getValue() : null;
+    @Override
+    public void cancel(T entry) {
+        if (!entry.isScheduled()) return;
+        remove(entry);
+        entry.slot = ScheduleEntry.UNSCHEDULED;
+        size--;
     }
 
-    public Instant peekEarliestTimestamp() {
-        Map.Entry<Instant, T> entry = sorted.firstEntry();
-        return entry != null ? entry.getKey() : Instant.MAX;
+    @Override
+    public T poll(long now) {
+        Map.Entry<Long, ArrayDeque<T>> first = sorted.firstEntry();
+        if (first == null || first.getKey() > now) return null;
+
+        T entry = first.getValue().poll();
+        if (first.getValue().isEmpty()) sorted.remove(first.getKey());
+        entry.slot = ScheduleEntry.UNSCHEDULED;
+        size--;
+        return entry;
     }
 
-    public T pollEarliest() {
-        Map.Entry<Instant, T> entry = sorted.pollFirstEntry();
-        if (entry == null) return null;
-        timestamps.remove(entry.getValue());
-        return entry.getValue();
+    @Override
+    public long peekDeadline() {
+        return sorted.isEmpty() ? Long.MAX_VALUE : sorted.firstKey();
     }
 
-    public boolean isEmpty() {
-        return sorted.isEmpty();
+    @Override
+    public int size() {
+        return size;
     }
 
+    @Override
     public void clear() {
+        for (ArrayDeque<T> bucket : sorted.values()) {
+            for (T entry : bucket) entry.slot = ScheduleEntry.UNSCHEDULED;
+        }
         sorted.clear();
-        timestamps.clear();
+        size = 0;
+    }
+
+    private void remove(T entry) {
+        ArrayDeque<T> bucket = sorted.get(entry.deadline);
+        bucket.remove(entry);
+        if (bucket.isEmpty()) sorted.remove(entry.deadline);
     }
 }